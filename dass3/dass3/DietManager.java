@@ -6,11 +6,14 @@ import yada.model.food.FoodDatabase;
 import yada.model.log.DailyLog;
 import yada.model.log.DailyLogManager;
 import yada.persistence.DatabasePersistence;
+import yada.persistence.Journal;
 import yada.persistence.LogPersistence;
 import yada.persistence.ProfilePersistence;
 import yada.util.CommandHistory;
 import yada.view.ConsoleView;
 
+import java.io.File;
+
 import java.time.LocalDate;
 import java.util.Scanner;
 
@@ -18,6 +21,9 @@ import java.util.Scanner;
  * Main controller for the YADA Diet Manager application
  */
 public class DietManager {
+    private static final int CHECKPOINT_INTERVAL = 100; // Journal records between full saves
+    private static final String FORMAT_PROPERTY = "yada.format"; // "binary" selects foods.bin and logs.bin
+    
     private final FoodDatabase foodDatabase;
     private final DailyLogManager logManager;
     private final DietProfile profile;
@@ -30,16 +36,40 @@ public class DietManager {
         this.scanner = new Scanner(System.in);
         this.commandHistory = new CommandHistory();
         
+        // The binary files are used once either exists, or when asked for
+        // with -Dyada.format=binary. Each text file still lacking its binary
+        // counterpart, say after a crash halfway through converting, is
+        // loaded and then converted.
+        boolean binary = "binary".equals(System.getProperty(FORMAT_PROPERTY))
+            || new File("foods.bin").exists() || new File("logs.bin").exists();
+        boolean convertFoods = binary && needsConversion("foods");
+        boolean convertLogs = binary && needsConversion("logs");
+        String foodsFile = binary ? "foods.bin" : "foods.txt";
+        String logsFile = binary ? "logs.bin" : "logs.txt";
+        String loadedFoodsFile = convertFoods ? "foods.txt" : foodsFile;
+        
         // Load database and logs
-        DatabasePersistence databasePersistence = new DatabasePersistence("foods.txt");
+        DatabasePersistence databasePersistence = new DatabasePersistence(loadedFoodsFile);
         this.foodDatabase = databasePersistence.loadDatabase();
         
-        LogPersistence logPersistence = new LogPersistence("logs.txt");
-        this.logManager = logPersistence.loadLogs();
+        LogPersistence logPersistence = new LogPersistence(convertLogs ? "logs.txt" : logsFile, loadedFoodsFile);
+        this.logManager = logPersistence.loadLogs(foodDatabase);
         
         ProfilePersistence profilePersistence = new ProfilePersistence("profile.txt");
         this.profile = profilePersistence.loadProfile();
         
+        // Reapply the changes made since the files were last saved
+        Journal journal = new Journal("journal.txt", CHECKPOINT_INTERVAL);
+        journal.replay(foodDatabase, logManager, profile);
+        commandHistory.setJournal(journal);
+        if (convertFoods) {
+            databasePersistence = new DatabasePersistence(foodsFile);
+        }
+        // The saved calorie rollups are stamped with the foods file too
+        if (convertFoods || convertLogs) {
+            logPersistence = new LogPersistence(logsFile, foodsFile);
+        }
+        
         // Initialize view and controller
         this.view = new ConsoleView(scanner);
         this.menuController = new MenuController(
@@ -50,8 +80,18 @@ public class DietManager {
             view,
             databasePersistence,
             logPersistence,
-            profilePersistence
+            profilePersistence,
+            journal
         );
+        journal.setCheckpointAction(menuController::checkpoint);
+        if (convertFoods || convertLogs) {
+            menuController.checkpoint();
+        }
+    }
+    
+    // True if the named data has a text file but no binary file yet
+    private static boolean needsConversion(String baseName) {
+        return !new File(baseName + ".bin").exists() && new File(baseName + ".txt").exists();
     }
 
     public void start() {
@@ -82,6 +122,9 @@ public class DietManager {
                 case 5:
                     menuController.undo();
                     break;
+                case 6:
+                    menuController.showCalorieTrends();
+                    break;
                 default:
                     view.displayMessage("Invalid option. Please try again.");
             }
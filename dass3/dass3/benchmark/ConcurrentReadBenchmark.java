@@ -0,0 +1,161 @@
+// File: benchmark/ConcurrentReadBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for concurrent use of FoodDatabase: 1, 2, 4, ... reader
+ * threads run lookups and searches of every kind while one writer keeps
+ * adding, replacing and removing foods. Reports read throughput for each
+ * reader count and fails if any thread throws or the indexes disagree with
+ * the catalog afterwards.
+ *
+ * Usage: ConcurrentReadBenchmark [foods] [max readers] [seconds per run]
+ */
+public class ConcurrentReadBenchmark {
+    private static final String[] WORDS = {"apple", "bread", "rice", "chicken", "salad", "cheese", "banana", "soup"};
+    
+    public static void main(String[] args) throws InterruptedException {
+        int foodCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int maxReaders = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        
+        FoodDatabase database = new FoodDatabase();
+        for (int i = 0; i < foodCount; i++) {
+            database.addFood(createFood(i, 0));
+        }
+        System.out.printf("%d foods, %d available processors%n", foodCount, Runtime.getRuntime().availableProcessors());
+        
+        boolean failed = false;
+        double singleReader = 0;
+        for (int readers = 1; readers <= maxReaders; readers *= 2) {
+            AtomicLong reads = new AtomicLong();
+            List<Throwable> errors = run(database, foodCount, readers, seconds, reads);
+            double perSecond = reads.get() / (double) seconds;
+            if (readers == 1) {
+                singleReader = perSecond;
+            }
+            System.out.printf("%d readers: %.0f reads/s (%.2fx one reader)%n", readers, perSecond, perSecond / singleReader);
+            for (Throwable error : errors) {
+                error.printStackTrace();
+                failed = true;
+            }
+        }
+        
+        if (!checkConsistent(database)) {
+            System.out.println("Indexes disagree with the catalog");
+            failed = true;
+        }
+        System.out.println(failed ? "FAILED" : "OK");
+        if (failed) {
+            System.exit(1);
+        }
+    }
+    
+    private static List<Throwable> run(FoodDatabase database, int foodCount, int readers, int seconds,
+                                       AtomicLong reads) throws InterruptedException {
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Throwable> errors = new ArrayList<>();
+        CountDownLatch started = new CountDownLatch(readers + 1);
+        List<Thread> threads = new ArrayList<>();
+        
+        threads.add(new Thread(guard(errors, () -> {
+            started.countDown();
+            for (int version = 1; running.get(); version++) {
+                int id = version % foodCount;
+                if (version % 3 == 0) {
+                    database.removeFood(createFood(id, 0).getName());
+                }
+                database.addFood(createFood(id, version));
+            }
+        })));
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            threads.add(new Thread(guard(errors, () -> {
+                started.countDown();
+                long count = 0;
+                for (int i = seed; running.get(); i++) {
+                    read(database, i, foodCount);
+                    count++;
+                }
+                reads.addAndGet(count);
+            })));
+        }
+        
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        started.await();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return errors;
+    }
+    
+    // One read of each kind in turn; a food may vanish between two calls
+    private static void read(FoodDatabase database, int i, int foodCount) {
+        String word = WORDS[i % WORDS.length];
+        switch (i % 6) {
+            case 0:
+                database.getFood(createFood(i % foodCount, 0).getName());
+                break;
+            case 1:
+                database.searchFoods(Arrays.asList(word, "item" + (i % 100)), i % 2 == 0);
+                break;
+            case 2:
+                database.searchFoodsRanked(Arrays.asList(word), false, 0, 10);
+                break;
+            case 3:
+                database.autocomplete(word.substring(0, 2), 10);
+                break;
+            case 4:
+                database.queryFoods(word + " AND NOT " + WORDS[(i + 1) % WORDS.length]);
+                break;
+            default:
+                database.findFoodsByCalories(i % 500, i % 500 + 50);
+                break;
+        }
+    }
+    
+    // Every food in the catalog must be found through the name, calorie and
+    // trigram indexes
+    private static boolean checkConsistent(FoodDatabase database) {
+        for (Food food : database.getAllFoods()) {
+            String name = food.getName();
+            if (!database.autocomplete(name, Integer.MAX_VALUE).contains(name)
+                || !database.findFoodsByCalories(food.getCaloriesPerServing(), food.getCaloriesPerServing()).contains(food)
+                || !database.searchFoods(Arrays.asList(name), true).contains(food)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static Food createFood(int id, int version) {
+        List<String> keywords = Arrays.asList(WORDS[id % WORDS.length], "item" + (id % 100));
+        return new BasicFood(WORDS[(id / 8) % WORDS.length] + " " + id, keywords, (id + version) % 900);
+    }
+    
+    private static Runnable guard(List<Throwable> errors, Runnable body) {
+        return () -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                synchronized (errors) {
+                    errors.add(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+// File: benchmark/FuzzySearchBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times FoodDatabase.searchFoodsFuzzy against a linear scan that computes the
+ * edit distance to every word of every food, and checks that both find the
+ * same foods.
+ *
+ * Usage: FuzzySearchBenchmark [foods] [lookups] [max distance]
+ */
+public class FuzzySearchBenchmark {
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+    
+    public static void main(String[] args) {
+        int foodCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxDistance = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        
+        Random random = new Random(42);
+        List<String> vocabulary = new ArrayList<>();
+        FoodDatabase database = new FoodDatabase();
+        for (int i = 0; i < foodCount; i++) {
+            String first = randomWord(random);
+            String second = randomWord(random);
+            String keyword = randomWord(random);
+            vocabulary.addAll(Arrays.asList(first, second, keyword));
+            database.addFood(new BasicFood(first + " " + second, Collections.singletonList(keyword), 100));
+        }
+        List<Food> foods = database.getAllFoods();
+        
+        // Vocabulary words with a typo or two, plus some that match nothing
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < lookups; i++) {
+            String word = vocabulary.get(random.nextInt(vocabulary.size()));
+            queries.add(i % 5 == 0 ? randomWord(random) : typo(typo(word, random), random));
+        }
+        
+        int mismatches = 0;
+        for (String query : queries) {
+            List<String> indexed = names(database.searchFoodsFuzzy(Collections.singletonList(query), true, maxDistance));
+            if (!indexed.equals(scan(foods, query, maxDistance))) {
+                mismatches++;
+            }
+        }
+        
+        long start = System.nanoTime();
+        for (String query : queries) {
+            database.searchFoodsFuzzy(Collections.singletonList(query), true, maxDistance);
+        }
+        long indexTime = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        for (String query : queries) {
+            scan(foods, query, maxDistance);
+        }
+        long scanTime = System.nanoTime() - start;
+        
+        System.out.printf("%d foods, %d lookups within %d edits: index %d ms, linear scan %d ms, %d mismatches%n",
+                          foodCount, lookups, maxDistance, indexTime / 1_000_000, scanTime / 1_000_000, mismatches);
+    }
+    
+    private static List<String> scan(List<Food> foods, String query, int maxDistance) {
+        List<String> matches = new ArrayList<>();
+        for (Food food : foods) {
+            List<String> words = new ArrayList<>(Arrays.asList(food.getName().split(" ")));
+            words.addAll(food.getKeywords());
+            for (String word : words) {
+                if (levenshtein(query, word) <= maxDistance) {
+                    matches.add(food.getName());
+                    break;
+                }
+            }
+        }
+        Collections.sort(matches);
+        return matches;
+    }
+    
+    private static List<String> names(List<Food> foods) {
+        List<String> names = new ArrayList<>();
+        for (Food food : foods) {
+            names.add(food.getName());
+        }
+        return names;
+    }
+    
+    private static String randomWord(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = 4 + random.nextInt(7);
+        for (int i = 0; i < length; i++) {
+            sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        return sb.toString();
+    }
+    
+    // Substitutes, inserts or deletes one random letter
+    private static String typo(String word, Random random) {
+        int at = random.nextInt(word.length());
+        char letter = LETTERS.charAt(random.nextInt(LETTERS.length()));
+        switch (random.nextInt(3)) {
+            case 0:
+                return word.substring(0, at) + letter + word.substring(at + 1);
+            case 1:
+                return word.substring(0, at) + letter + word.substring(at);
+            default:
+                return word.length() > 1 ? word.substring(0, at) + word.substring(at + 1) : word;
+        }
+    }
+    
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
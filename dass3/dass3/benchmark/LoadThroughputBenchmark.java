@@ -0,0 +1,263 @@
+// File: benchmark/LoadThroughputBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.CompositeFood;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+import yada.model.food.NutrientVector;
+import yada.model.log.DailyLog;
+import yada.model.log.DailyLogManager;
+import yada.model.log.FoodEntry;
+import yada.persistence.DatabasePersistence;
+import yada.persistence.LogPersistence;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures text load throughput on large files: a foods.txt and a logs.txt
+ * of a million lines each by default, loaded by DatabasePersistence and
+ * LogPersistence (the byte-level FoodLineParser and LogLineParser over a
+ * TextBuffer) and by the loaders they replaced, which read each line with
+ * BufferedReader.readLine and took it apart with String.split and
+ * LocalDate.parse. Checks that both load the same foods and logs.
+ *
+ * Files go to a temporary directory that is removed afterwards. The default
+ * sizes need a heap of about 4 GB (-Xmx4g), mostly for the search indexes of
+ * a million foods.
+ *
+ * Usage: LoadThroughputBenchmark [food lines] [log lines] [rounds]
+ */
+public class LoadThroughputBenchmark {
+    private static final String[] WORDS = {"apple", "bread", "rice", "chicken", "salad", "cheese", "banana", "soup"};
+    private static final int ENTRIES_PER_DAY = 4;
+    private static final int LOGGED_FOODS = 10_000; // Logs only use the first foods
+    
+    public static void main(String[] args) throws IOException {
+        int foodLines = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int logLines = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        
+        File directory = Files.createTempDirectory("yada-load").toFile();
+        try {
+            String foodsFile = new File(directory, "foods.txt").getPath();
+            String logsFile = new File(directory, "logs.txt").getPath();
+            writeFoods(foodsFile, foodLines);
+            writeLogs(logsFile, logLines, Math.min(foodLines, LOGGED_FOODS));
+            System.out.printf("%d food lines (%d MB), %d log lines (%d MB), best of %d rounds%n",
+                              foodLines, new File(foodsFile).length() >> 20,
+                              logLines, new File(logsFile).length() >> 20, rounds);
+            
+            long oldFoods = Long.MAX_VALUE;
+            long oldLogs = Long.MAX_VALUE;
+            long newFoods = Long.MAX_VALUE;
+            long newLogs = Long.MAX_VALUE;
+            String oldSummary = null;
+            String newSummary = null;
+            for (int round = 0; round < rounds; round++) {
+                // Each round drops the previous round's data before loading,
+                // so the heap only ever holds one copy
+                oldSummary = null;
+                newSummary = null;
+                System.gc();
+                
+                long start = System.nanoTime();
+                FoodDatabase database = oldLoadFoods(foodsFile);
+                oldFoods = Math.min(oldFoods, System.nanoTime() - start);
+                start = System.nanoTime();
+                DailyLogManager logManager = oldLoadLogs(logsFile, database);
+                oldLogs = Math.min(oldLogs, System.nanoTime() - start);
+                oldSummary = summary(database, logManager);
+                
+                database = null;
+                logManager = null;
+                System.gc();
+                
+                start = System.nanoTime();
+                database = new DatabasePersistence(foodsFile).loadDatabase();
+                newFoods = Math.min(newFoods, System.nanoTime() - start);
+                start = System.nanoTime();
+                logManager = new LogPersistence(logsFile).loadLogs(database);
+                newLogs = Math.min(newLogs, System.nanoTime() - start);
+                newSummary = summary(database, logManager);
+            }
+            
+            report("foods", foodLines, oldFoods, newFoods);
+            report("logs", logLines, oldLogs, newLogs);
+            if (!oldSummary.equals(newSummary)) {
+                System.out.println("LOADED DATA DIFFERS: " + oldSummary + " vs " + newSummary);
+            }
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+    
+    private static void report(String what, int lines, long oldNanos, long newNanos) {
+        System.out.printf("%s: split loader %d ms (%.0f lines/s), byte parser %d ms (%.0f lines/s), %.2fx%n",
+                          what, oldNanos / 1_000_000, lines * 1e9 / oldNanos,
+                          newNanos / 1_000_000, lines * 1e9 / newNanos, (double) oldNanos / newNanos);
+    }
+    
+    // Every tenth food is a composite of three earlier basic foods; one basic
+    // food in four has nutrients as well as calories
+    private static void writeFoods(String filename, int lines) throws IOException {
+        Random random = new Random(42);
+        List<Food> basics = new ArrayList<>();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < lines; i++) {
+                String name = WORDS[i % WORDS.length] + " " + i;
+                List<String> keywords = Arrays.asList(WORDS[(i / 8) % WORDS.length], "item" + (i % 1000));
+                Food food;
+                if (i % 10 == 9) {
+                    CompositeFood composite = new CompositeFood(name, keywords);
+                    for (int c = 0; c < 3; c++) {
+                        composite.addComponent(basics.get(random.nextInt(basics.size())), 1 + random.nextInt(3));
+                    }
+                    food = composite;
+                } else {
+                    NutrientVector nutrients = NutrientVector.ZERO;
+                    if (i % 4 == 0) {
+                        nutrients = NutrientVector.parse(random.nextInt(40) + ";" + random.nextInt(60) + ";" + random.nextInt(30));
+                    }
+                    food = new BasicFood(name, keywords, random.nextInt(900), nutrients);
+                    // Components come from a bounded pool, so the writer
+                    // does not hold on to every food
+                    if (basics.size() < LOGGED_FOODS) {
+                        basics.add(food);
+                    } else {
+                        basics.set(random.nextInt(basics.size()), food);
+                    }
+                }
+                writer.write(food.toFileString());
+                writer.newLine();
+            }
+        }
+    }
+    
+    private static void writeLogs(String filename, int lines, int foodCount) throws IOException {
+        Random random = new Random(7);
+        LocalDate first = LocalDate.of(1000, 1, 1);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8))) {
+            for (int day = 0; day < lines; day++) {
+                DailyLog log = new DailyLog(first.plusDays(day));
+                for (int e = 0; e < ENTRIES_PER_DAY; e++) {
+                    int i = random.nextInt(foodCount);
+                    Food food = new BasicFood(WORDS[i % WORDS.length] + " " + i, Arrays.asList(), 0);
+                    log.addEntry(new FoodEntry(food, 1 + random.nextInt(3)));
+                }
+                writer.write(log.toFileString());
+                writer.newLine();
+            }
+        }
+    }
+    
+    private static String summary(FoodDatabase database, DailyLogManager logManager) {
+        long calories = 0;
+        for (Food food : database.getAllFoods()) {
+            calories += food.getCaloriesPerServing();
+        }
+        int entries = 0;
+        long logged = 0;
+        for (DailyLog log : logManager.getAllLogs()) {
+            entries += log.getEntries().size();
+            logged += log.getTotalCalories();
+        }
+        return database.getAllFoods().size() + " foods of " + calories + " kcal, "
+            + logManager.getAllLogs().size() + " logs with " + entries + " entries of " + logged + " kcal";
+    }
+    
+    // The food loader before the byte-level parser, minus binary files, the
+    // "X|name" removal lines and cycle detection, none of which the
+    // generated file needs: composites only use basic foods
+    private static FoodDatabase oldLoadFoods(String filename) throws IOException {
+        FoodDatabase database = new FoodDatabase();
+        Map<String, String[]> composites = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                
+                String[] parts = line.split("\\|");
+                if (parts.length < 4) {
+                    continue;
+                }
+                
+                List<String> keywords = Arrays.asList(parts[2].split(","));
+                if (parts[0].equals("B")) {
+                    int calories = Integer.parseInt(parts[3]);
+                    NutrientVector nutrients = parts.length >= 5 ? NutrientVector.parse(parts[4]) : NutrientVector.ZERO;
+                    database.addFood(new BasicFood(parts[1], keywords, calories, nutrients));
+                    composites.remove(parts[1]);
+                } else if (parts[0].equals("C")) {
+                    composites.put(parts[1], parts);
+                }
+            }
+        }
+        
+        for (String[] parts : composites.values()) {
+            CompositeFood food = new CompositeFood(parts[1], Arrays.asList(parts[2].split(",")));
+            for (String componentPart : parts[3].split(",")) {
+                String[] compDetail = componentPart.split(":");
+                if (compDetail.length == 2) {
+                    Food component = database.getFood(compDetail[0]);
+                    if (component != null) {
+                        food.addComponent(component, Integer.parseInt(compDetail[1]));
+                    }
+                }
+            }
+            database.addFood(food);
+        }
+        return database;
+    }
+    
+    // The log loader before the byte-level parser, minus binary files and
+    // the saved rollups
+    private static DailyLogManager oldLoadLogs(String filename, FoodDatabase foodDatabase) throws IOException {
+        DailyLogManager logManager = new DailyLogManager();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                
+                String[] parts = line.split("\\|");
+                DailyLog log = new DailyLog(LocalDate.parse(parts[0]));
+                if (parts.length > 1 && !parts[1].isEmpty()) {
+                    for (String entry : parts[1].split(",")) {
+                        String[] entryParts = entry.split(":");
+                        if (entryParts.length != 2) {
+                            continue;
+                        }
+                        
+                        Food food = foodDatabase.getFood(entryParts[0]);
+                        if (food != null) {
+                            log.addEntry(new FoodEntry(food, Integer.parseInt(entryParts[1])));
+                        }
+                    }
+                }
+                logManager.addLog(log);
+            }
+        }
+        return logManager;
+    }
+}
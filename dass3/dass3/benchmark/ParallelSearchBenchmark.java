@@ -0,0 +1,68 @@
+// File: benchmark/ParallelSearchBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times a search whose keyword is too short for the trigram index, so every
+ * food is verified, sequentially and then on fork/join pools of 1, 2, 4, ...
+ * threads up to the maximum. Also checks that every pool size returns the
+ * sequential result.
+ *
+ * Usage: ParallelSearchBenchmark [foods] [max threads, default all cores]
+ */
+public class ParallelSearchBenchmark {
+    private static final int ROUNDS = 20;
+    private static final int PAGE_SIZE = 10;
+    
+    public static void main(String[] args) {
+        int foodCount = args.length > 0 ? Integer.parseInt(args[0]) : 400_000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        
+        FoodDatabase database = new FoodDatabase();
+        String[] words = {"apple", "bread", "rice", "chicken", "salad", "cheese", "banana", "soup"};
+        for (int i = 0; i < foodCount; i++) {
+            List<String> keywords = Arrays.asList(words[i % words.length], "item" + (i % 1000));
+            database.addFood(new BasicFood(words[(i / 8) % words.length] + " " + i, keywords, i % 900));
+        }
+        // Two letters, so there are no trigrams to narrow the candidates
+        List<String> query = Arrays.asList("ic", "xq");
+        
+        System.out.printf("%d foods, %d available processors%n", foodCount, Runtime.getRuntime().availableProcessors());
+        database.setSearchPool(null);
+        List<Food> expected = database.searchFoodsRanked(query, false, 0, PAGE_SIZE);
+        double sequential = time(database, query);
+        System.out.printf("sequential: %.1f ms per search%n", sequential);
+        
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            database.setSearchPool(pool);
+            if (!database.searchFoodsRanked(query, false, 0, PAGE_SIZE).equals(expected)) {
+                System.out.println(threads + " threads: results differ from the sequential search");
+            }
+            double parallel = time(database, query);
+            System.out.printf("%d threads: %.1f ms per search (%.2fx sequential)%n",
+                              threads, parallel, sequential / parallel);
+            pool.shutdown();
+        }
+        database.setSearchPool(null);
+    }
+    
+    // Average time of one ranked search once warmed up
+    private static double time(FoodDatabase database, List<String> query) {
+        for (int i = 0; i < ROUNDS; i++) {
+            database.searchFoodsRanked(query, false, 0, PAGE_SIZE);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            database.searchFoodsRanked(query, false, 0, PAGE_SIZE);
+        }
+        return (System.nanoTime() - start) / 1e6 / ROUNDS;
+    }
+}
@@ -0,0 +1,151 @@
+// File: benchmark/PersistenceFormatBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.CompositeFood;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+import yada.model.log.DailyLog;
+import yada.model.log.DailyLogManager;
+import yada.model.log.FoodEntry;
+import yada.persistence.DatabasePersistence;
+import yada.persistence.LogPersistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the text and binary file formats: full save time, load time and
+ * file size for the same foods and logs, and checks that both load back the
+ * same data. Files go to a temporary directory that is removed afterwards.
+ *
+ * Usage: PersistenceFormatBenchmark [foods] [days of logs] [rounds]
+ */
+public class PersistenceFormatBenchmark {
+    private static final String[] WORDS = {"apple", "bread", "rice", "chicken", "salad", "cheese", "banana", "soup"};
+    private static final int ENTRIES_PER_DAY = 6;
+    
+    public static void main(String[] args) throws IOException {
+        int foodCount = args.length > 0 ? Integer.parseInt(args[0]) : 40_000;
+        int days = args.length > 1 ? Integer.parseInt(args[1]) : 3650;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        
+        FoodDatabase database = createFoods(foodCount);
+        DailyLogManager logManager = createLogs(database, days);
+        String expectedFoods = foodLines(database);
+        String expectedLogs = logLines(logManager);
+        System.out.printf("%d foods, %d days of logs, best of %d rounds%n", foodCount, days, rounds);
+        
+        File directory = Files.createTempDirectory("yada-formats").toFile();
+        try {
+            for (String extension : Arrays.asList(".txt", ".bin")) {
+                String foodsFile = new File(directory, "foods" + extension).getPath();
+                String logsFile = new File(directory, "logs" + extension).getPath();
+                long bestSave = Long.MAX_VALUE;
+                long bestLoad = Long.MAX_VALUE;
+                boolean same = true;
+                
+                for (int round = 0; round < rounds; round++) {
+                    new File(foodsFile).delete();
+                    new File(logsFile).delete();
+                    
+                    // New persistence objects have not loaded anything, so
+                    // both formats write their files in full
+                    long start = System.nanoTime();
+                    new DatabasePersistence(foodsFile).saveDatabase(database);
+                    new LogPersistence(logsFile).saveLogs(logManager);
+                    bestSave = Math.min(bestSave, System.nanoTime() - start);
+                    
+                    start = System.nanoTime();
+                    FoodDatabase loaded = new DatabasePersistence(foodsFile).loadDatabase();
+                    DailyLogManager loadedLogs = new LogPersistence(logsFile).loadLogs(loaded);
+                    bestLoad = Math.min(bestLoad, System.nanoTime() - start);
+                    
+                    same &= foodLines(loaded).equals(expectedFoods) && logLines(loadedLogs).equals(expectedLogs);
+                }
+                
+                long size = new File(foodsFile).length() + new File(logsFile).length();
+                System.out.printf("%s: save %d ms, load %d ms, %d KB%s%n", extension.substring(1),
+                                  bestSave / 1_000_000, bestLoad / 1_000_000, size / 1024,
+                                  same ? "" : ", LOADED DATA DIFFERS");
+            }
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+    
+    private static FoodDatabase createFoods(int foodCount) {
+        Random random = new Random(42);
+        FoodDatabase database = new FoodDatabase();
+        List<Food> basics = new ArrayList<>();
+        for (int i = 0; i < foodCount; i++) {
+            String name = WORDS[i % WORDS.length] + " " + i;
+            List<String> keywords = Arrays.asList(WORDS[(i / 8) % WORDS.length], "item" + (i % 1000));
+            if (i % 10 == 9) {
+                CompositeFood composite = new CompositeFood(name, keywords);
+                for (int c = 0; c < 3; c++) {
+                    composite.addComponent(basics.get(random.nextInt(basics.size())), 1 + random.nextInt(3));
+                }
+                database.addFood(composite);
+            } else {
+                BasicFood food = new BasicFood(name, keywords, random.nextInt(900));
+                basics.add(food);
+                database.addFood(food);
+            }
+        }
+        return database;
+    }
+    
+    private static DailyLogManager createLogs(FoodDatabase database, int days) {
+        Random random = new Random(7);
+        List<Food> foods = database.getAllFoods();
+        DailyLogManager logManager = new DailyLogManager();
+        LocalDate first = LocalDate.of(2015, 1, 1);
+        for (int day = 0; day < days; day++) {
+            DailyLog log = logManager.getOrCreateLog(first.plusDays(day));
+            for (int e = 0; e < ENTRIES_PER_DAY; e++) {
+                log.addEntry(new FoodEntry(foods.get(random.nextInt(foods.size())), 1 + random.nextInt(3)));
+            }
+        }
+        return logManager;
+    }
+    
+    // Sorted, as neither the catalog nor a composite's components keep the
+    // order they were added in
+    private static String foodLines(FoodDatabase database) {
+        List<String> lines = new ArrayList<>();
+        for (Food food : database.getAllFoods()) {
+            String line = food.getName() + "|" + food.getKeywords() + "|" + food.getCaloriesPerServing();
+            if (food instanceof CompositeFood) {
+                List<String> components = new ArrayList<>();
+                for (Map.Entry<Food, Integer> component : ((CompositeFood) food).getComponents().entrySet()) {
+                    components.add(component.getKey().getName() + ":" + component.getValue());
+                }
+                Collections.sort(components);
+                line += "|" + components;
+            }
+            lines.add(line);
+        }
+        Collections.sort(lines);
+        return String.join("\n", lines);
+    }
+    
+    private static String logLines(DailyLogManager logManager) {
+        StringBuilder sb = new StringBuilder();
+        for (DailyLog log : logManager.getAllLogs()) {
+            sb.append(log.toFileString()).append('\n');
+        }
+        return sb.toString();
+    }
+}
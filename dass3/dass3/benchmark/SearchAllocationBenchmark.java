@@ -0,0 +1,86 @@
+// File: benchmark/SearchAllocationBenchmark.java
+package yada.benchmark;
+
+import yada.model.food.BasicFood;
+import yada.model.food.CompositeFood;
+import yada.model.food.Food;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the heap allocated by keyword matching, which should be none once
+ * the JIT has warmed up, since foods keep pre-normalized search keys.
+ *
+ * Usage: SearchAllocationBenchmark [calls]
+ */
+public class SearchAllocationBenchmark {
+    private static final int FOOD_COUNT = 1000;
+    private static final int WARMUP_ROUNDS = 5;
+    
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.err.println("Per-thread allocation counting is not supported by this JVM");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        List<Food> foods = createFoods();
+        // Mixed case and padding, as typed by a user
+        List<String> queries = Arrays.asList(" Apple", "BREAD ", "fruit", "rice", "nothing");
+        
+        long matches = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            matches += run(foods, queries, calls);
+        }
+        
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        matches += run(foods, queries, calls);
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        
+        System.out.printf("%d matchesKeyword/matchesAnyKeyword calls: %d bytes allocated (%.4f per call), %d ms%n",
+                          calls, allocated, (double) allocated / calls, elapsed / 1_000_000);
+        // Keeps the work from being optimized away
+        System.out.println("(" + matches + " matches)");
+    }
+    
+    private static long run(List<Food> foods, List<String> queries, int calls) {
+        long matches = 0;
+        for (int i = 0; i < calls; i++) {
+            Food food = foods.get(i % foods.size());
+            if (i % 2 == 0) {
+                if (food.matchesKeyword(queries.get(i % queries.size()))) {
+                    matches++;
+                }
+            } else if (food.matchesAnyKeyword(queries)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    private static List<Food> createFoods() {
+        String[] words = {"Apple", "Bread", "Rice", "Chicken", "Salad", "Cheese", "Banana", "Soup"};
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < FOOD_COUNT; i++) {
+            String name = words[i % words.length] + " " + i;
+            List<String> keywords = Arrays.asList(words[(i / 8) % words.length].toLowerCase(), "fruit", "item" + i);
+            if (i % 10 == 9) {
+                CompositeFood composite = new CompositeFood(name, keywords);
+                composite.addComponent(foods.get(i / 2), 2);
+                foods.add(composite);
+            } else {
+                foods.add(new BasicFood(name, keywords, i % 500));
+            }
+        }
+        return foods;
+    }
+}
@@ -6,10 +6,14 @@ import yada.model.food.BasicFood;
 import yada.model.food.CompositeFood;
 import yada.model.food.Food;
 import yada.model.food.FoodDatabase;
+import yada.model.food.Nutrient;
+import yada.model.food.NutrientVector;
+import yada.model.log.CalorieRollups;
 import yada.model.log.DailyLog;
 import yada.model.log.DailyLogManager;
 import yada.model.log.FoodEntry;
 import yada.persistence.DatabasePersistence;
+import yada.persistence.Journal;
 import yada.persistence.LogPersistence;
 import yada.persistence.ProfilePersistence;
 import yada.util.Command;
@@ -20,11 +24,19 @@ import yada.view.ConsoleView;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Controller handling user interactions with the menu system
  */
 public class MenuController {
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int RESULTS_PAGE_SIZE = 10;
+    private static final int FUZZY_DISTANCE = 2;
+    private static final int TREND_WEEKS = 8;
+    private static final int TREND_MONTHS = 12;
+    private static final int[] TREND_WINDOW_DAYS = {7, 30, 90};
+    
     private final FoodDatabase foodDatabase;
     private final DailyLogManager logManager;
     private final DietProfile profile;
@@ -33,12 +45,13 @@ public class MenuController {
     private final DatabasePersistence databasePersistence;
     private final LogPersistence logPersistence;
     private final ProfilePersistence profilePersistence;
+    private final Journal journal;
     private LocalDate currentDate;
 
     public MenuController(FoodDatabase foodDatabase, DailyLogManager logManager, DietProfile profile,
                          CommandHistory commandHistory, ConsoleView view,
                          DatabasePersistence databasePersistence, LogPersistence logPersistence,
-                         ProfilePersistence profilePersistence) {
+                         ProfilePersistence profilePersistence, Journal journal) {
         this.foodDatabase = foodDatabase;
         this.logManager = logManager;
         this.profile = profile;
@@ -47,14 +60,25 @@ public class MenuController {
         this.databasePersistence = databasePersistence;
         this.logPersistence = logPersistence;
         this.profilePersistence = profilePersistence;
+        this.journal = journal;
         this.currentDate = LocalDate.now();
     }
 
     public void saveAndExit() {
+        checkpoint();
+        journal.close();
+        view.displayMessage("All data saved. Goodbye!");
+    }
+    
+    /**
+     * Saves every data file and empties the journal. The journal is replayed
+     * over all of the files at once, so none of them may be saved alone.
+     */
+    public void checkpoint() {
         databasePersistence.saveDatabase(foodDatabase);
         logPersistence.saveLogs(logManager);
         profilePersistence.saveProfile(profile);
-        view.displayMessage("All data saved. Goodbye!");
+        journal.clear();
     }
 
     public void manageFoods() {
@@ -80,6 +104,12 @@ public class MenuController {
                 case 4:
                     saveFoodDatabase();
                     break;
+                case 5:
+                    advancedSearch();
+                    break;
+                case 6:
+                    searchByCalories();
+                    break;
                 default:
                     view.displayMessage("Invalid option. Please try again.");
             }
@@ -98,7 +128,13 @@ public class MenuController {
         view.displayMessage("Enter calories per serving:");
         int calories = view.getIntInput();
         
-        BasicFood newFood = new BasicFood(name, keywords, calories);
+        view.displayMessage("Enter nutrients per serving as name=amount pairs, e.g. protein=20,fat=5.5 (blank to skip):");
+        NutrientVector nutrients = readNutrients(view.getStringInput());
+        
+        BasicFood newFood = new BasicFood(name, keywords, calories, nutrients);
+        
+        // Remember any food this one replaces so undo can put it back
+        final Food replacedFood = foodDatabase.getFood(newFood.getName());
         
         Command addFoodCommand = new Command() {
             @Override
@@ -108,7 +144,21 @@ public class MenuController {
             
             @Override
             public void undo() {
-                foodDatabase.removeFood(newFood.getName());
+                if (replacedFood != null) {
+                    foodDatabase.addFood(replacedFood);
+                } else {
+                    foodDatabase.removeFood(newFood.getName());
+                }
+            }
+            
+            @Override
+            public String getExecuteRecord() {
+                return Journal.foodAdded(newFood);
+            }
+            
+            @Override
+            public String getUndoRecord() {
+                return replacedFood != null ? Journal.foodAdded(replacedFood) : Journal.foodRemoved(newFood.getName());
             }
         };
         
@@ -116,6 +166,29 @@ public class MenuController {
         view.displayMessage("Food added successfully!");
     }
     
+    private NutrientVector readNutrients(String input) {
+        NutrientVector nutrients = NutrientVector.ZERO;
+        for (String pair : input.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            
+            String[] parts = pair.split("=");
+            Nutrient nutrient = parts.length == 2 ? Nutrient.fromName(parts[0].trim()) : null;
+            if (nutrient == null) {
+                view.displayMessage("Skipping unknown nutrient: " + pair.trim());
+                continue;
+            }
+            
+            try {
+                nutrients = nutrients.with(nutrient, Double.parseDouble(parts[1].trim()));
+            } catch (NumberFormatException e) {
+                view.displayMessage("Skipping invalid amount: " + pair.trim());
+            }
+        }
+        return nutrients;
+    }
+    
     private void createCompositeFood() {
         view.displayMessage("\n--- Create Composite Food ---");
         view.displayMessage("Enter composite food name:");
@@ -164,6 +237,9 @@ public class MenuController {
             compositeFood.addComponent(components.get(i), servings.get(i));
         }
         
+        // Remember any food this one replaces so undo can put it back
+        final Food replacedFood = foodDatabase.getFood(compositeFood.getName());
+        
         Command addCompositeCommand = new Command() {
             @Override
             public void execute() {
@@ -172,7 +248,21 @@ public class MenuController {
             
             @Override
             public void undo() {
-                foodDatabase.removeFood(compositeFood.getName());
+                if (replacedFood != null) {
+                    foodDatabase.addFood(replacedFood);
+                } else {
+                    foodDatabase.removeFood(compositeFood.getName());
+                }
+            }
+            
+            @Override
+            public String getExecuteRecord() {
+                return Journal.foodAdded(compositeFood);
+            }
+            
+            @Override
+            public String getUndoRecord() {
+                return replacedFood != null ? Journal.foodAdded(replacedFood) : Journal.foodRemoved(compositeFood.getName());
             }
         };
         
@@ -190,16 +280,79 @@ public class MenuController {
         String matchAll = view.getStringInput();
         boolean all = matchAll.toLowerCase().startsWith("y");
         
-        List<Food> results = foodDatabase.searchFoods(keywords, all);
+        int offset = 0;
+        while (true) {
+            List<Food> page = foodDatabase.searchFoodsRanked(keywords, all, offset, RESULTS_PAGE_SIZE + 1);
+            boolean hasMore = page.size() > RESULTS_PAGE_SIZE;
+            if (hasMore) {
+                page = page.subList(0, RESULTS_PAGE_SIZE);
+            }
+            
+            if (page.isEmpty()) {
+                displayNoResults(keywords, all);
+                return;
+            }
+            
+            view.displayMessage("\nSearch Results:");
+            displaySearchResults(page, offset);
+            
+            if (!hasMore) {
+                return;
+            }
+            view.displayMessage("Show more results? (y/n)");
+            if (!view.getStringInput().toLowerCase().startsWith("y")) {
+                return;
+            }
+            offset += RESULTS_PAGE_SIZE;
+        }
+    }
+    
+    private void advancedSearch() {
+        view.displayMessage("\n--- Advanced Search ---");
+        view.displayMessage("Enter a query, e.g. protein AND (breakfast OR lunch) AND NOT dairy:");
+        String query = view.getStringInput();
+        
+        List<Food> results;
+        try {
+            results = foodDatabase.queryFoods(query);
+        } catch (IllegalArgumentException e) {
+            view.displayMessage("Invalid query: " + e.getMessage());
+            return;
+        }
         
         if (results.isEmpty()) {
             view.displayMessage("No foods found matching your criteria.");
         } else {
             view.displayMessage("\nSearch Results:");
-            for (int i = 0; i < results.size(); i++) {
-                Food food = results.get(i);
-                view.displayMessage((i + 1) + ". " + food.getName() + " (" + food.getCaloriesPerServing() + " cal/serving)");
-            }
+            displaySearchResults(results, 0);
+        }
+    }
+    
+    private void searchByCalories() {
+        view.displayMessage("\n--- Find Foods by Calorie Range ---");
+        view.displayMessage("Minimum calories per serving:");
+        int minCalories = view.getIntInput();
+        view.displayMessage("Maximum calories per serving:");
+        int maxCalories = view.getIntInput();
+        
+        view.displayMessage("Enter search keywords (comma separated, blank for any):");
+        String keywordsInput = view.getStringInput();
+        
+        List<Food> results;
+        if (keywordsInput.trim().isEmpty()) {
+            results = foodDatabase.findFoodsByCalories(minCalories, maxCalories);
+        } else {
+            List<String> keywords = List.of(keywordsInput.split(","));
+            view.displayMessage("Match all keywords? (y/n)");
+            boolean all = view.getStringInput().toLowerCase().startsWith("y");
+            results = foodDatabase.findFoodsByCalories(minCalories, maxCalories, keywords, all);
+        }
+        
+        if (results.isEmpty()) {
+            view.displayMessage("No foods found matching your criteria.");
+        } else {
+            view.displayMessage("\nSearch Results:");
+            displaySearchResults(results, 0);
         }
     }
     
@@ -212,31 +365,100 @@ public class MenuController {
         String matchAll = view.getStringInput();
         boolean all = matchAll.toLowerCase().startsWith("y");
         
-        List<Food> results = foodDatabase.searchFoods(keywords, all);
-        
-        if (results.isEmpty()) {
-            view.displayMessage("No foods found matching your criteria.");
-            return null;
-        } else {
+        int offset = 0;
+        while (true) {
+            List<Food> page = foodDatabase.searchFoodsRanked(keywords, all, offset, RESULTS_PAGE_SIZE + 1);
+            boolean hasMore = page.size() > RESULTS_PAGE_SIZE;
+            if (hasMore) {
+                page = page.subList(0, RESULTS_PAGE_SIZE);
+            }
+            
+            if (page.isEmpty()) {
+                return selectSimilarFood(keywords, all);
+            }
+            
             view.displayMessage("\nSearch Results:");
-            for (int i = 0; i < results.size(); i++) {
-                Food food = results.get(i);
-                view.displayMessage((i + 1) + ". " + food.getName() + " (" + food.getCaloriesPerServing() + " cal/serving)");
+            displaySearchResults(page, 0);
+            if (hasMore) {
+                view.displayMessage((page.size() + 1) + ". Show more results...");
             }
             
             view.displayMessage("\nSelect a food by number (0 to cancel):");
             int selection = view.getIntInput();
             
-            if (selection > 0 && selection <= results.size()) {
-                return results.get(selection - 1);
+            if (selection > 0 && selection <= page.size()) {
+                return page.get(selection - 1);
+            } else if (hasMore && selection == page.size() + 1) {
+                offset += RESULTS_PAGE_SIZE;
             } else {
                 return null;
             }
         }
     }
     
+    private void displayNoResults(List<String> keywords, boolean all) {
+        view.displayMessage("No foods found matching your criteria.");
+        List<Food> similar = foodDatabase.searchFoodsFuzzy(keywords, all, FUZZY_DISTANCE);
+        if (!similar.isEmpty()) {
+            view.displayMessage("\nDid you mean:");
+            displaySearchResults(similar.subList(0, Math.min(similar.size(), RESULTS_PAGE_SIZE)), 0);
+        } else {
+            displaySuggestions(keywords);
+        }
+    }
+    
+    private Food selectSimilarFood(List<String> keywords, boolean all) {
+        List<Food> similar = foodDatabase.searchFoodsFuzzy(keywords, all, FUZZY_DISTANCE);
+        if (similar.isEmpty()) {
+            view.displayMessage("No foods found matching your criteria.");
+            displaySuggestions(keywords);
+            return null;
+        }
+        
+        List<Food> page = similar.subList(0, Math.min(similar.size(), RESULTS_PAGE_SIZE));
+        view.displayMessage("No exact matches. Did you mean:");
+        displaySearchResults(page, 0);
+        
+        view.displayMessage("\nSelect a food by number (0 to cancel):");
+        int selection = view.getIntInput();
+        
+        if (selection > 0 && selection <= page.size()) {
+            return page.get(selection - 1);
+        } else {
+            return null;
+        }
+    }
+    
+    private void displaySearchResults(List<Food> results, int firstIndex) {
+        for (int i = 0; i < results.size(); i++) {
+            Food food = results.get(i);
+            view.displayMessage((firstIndex + i + 1) + ". " + food.getName() + " (" + food.getCaloriesPerServing() + " cal/serving)");
+        }
+    }
+    
+    private void displaySuggestions(List<String> keywords) {
+        List<String> suggestions = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (keyword.trim().isEmpty()) {
+                continue;
+            }
+            for (String name : foodDatabase.autocomplete(keyword, MAX_SUGGESTIONS)) {
+                if (!suggestions.contains(name) && suggestions.size() < MAX_SUGGESTIONS) {
+                    suggestions.add(name);
+                }
+            }
+            if (suggestions.size() >= MAX_SUGGESTIONS) {
+                break;
+            }
+        }
+        
+        if (!suggestions.isEmpty()) {
+            view.displayMessage("Foods starting with your search: " + String.join(", ", suggestions));
+        }
+    }
+    
     private void saveFoodDatabase() {
-        databasePersistence.saveDatabase(foodDatabase);
+        checkpoint();
         view.displayMessage("Food database saved successfully!");
     }
 
@@ -293,6 +515,16 @@ public class MenuController {
                 public void undo() {
                     log.removeEntry(entry);
                 }
+                
+                @Override
+                public String getExecuteRecord() {
+                    return Journal.logChanged(log);
+                }
+                
+                @Override
+                public String getUndoRecord() {
+                    return Journal.logChanged(log);
+                }
             };
             
             commandHistory.executeCommand(addEntryCommand);
@@ -331,6 +563,16 @@ public class MenuController {
                 public void undo() {
                     log.addEntry(entryToRemove);
                 }
+                
+                @Override
+                public String getExecuteRecord() {
+                    return Journal.logChanged(log);
+                }
+                
+                @Override
+                public String getUndoRecord() {
+                    return Journal.logChanged(log);
+                }
             };
             
             commandHistory.executeCommand(removeEntryCommand);
@@ -353,7 +595,7 @@ public class MenuController {
     }
     
     private void saveLogData() {
-        logPersistence.saveLogs(logManager);
+        checkpoint();
         view.displayMessage("Log data saved successfully!");
     }
 
@@ -433,6 +675,16 @@ public class MenuController {
                 profile.setWeight(oldWeight);
                 profile.setActivityLevel(oldActivityLevel);
             }
+            
+            @Override
+            public String getExecuteRecord() {
+                return Journal.profileChanged(profile);
+            }
+            
+            @Override
+            public String getUndoRecord() {
+                return Journal.profileChanged(profile);
+            }
         };
         
         commandHistory.executeCommand(updateProfileCommand);
@@ -468,6 +720,16 @@ public class MenuController {
                 profile.setWeight(oldWeight);
                 profile.setActivityLevel(oldActivityLevel);
             }
+            
+            @Override
+            public String getExecuteRecord() {
+                return Journal.profileChanged(profile);
+            }
+            
+            @Override
+            public String getUndoRecord() {
+                return Journal.profileChanged(profile);
+            }
         };
         
         commandHistory.executeCommand(updateDailyInfoCommand);
@@ -496,6 +758,16 @@ public class MenuController {
                 public void undo() {
                     profile.setCalculationMethod(oldMethod);
                 }
+                
+                @Override
+                public String getExecuteRecord() {
+                    return Journal.profileChanged(profile);
+                }
+                
+                @Override
+                public String getUndoRecord() {
+                    return Journal.profileChanged(profile);
+                }
             };
             
             commandHistory.executeCommand(changeMethodCommand);
@@ -551,6 +823,17 @@ public class MenuController {
             view.displayMessage("Calories Over Target: " + difference);
         }
         
+        NutrientVector nutrients = log.getTotalNutrients();
+        if (!nutrients.isZero()) {
+            view.displayMessage("\nNutrients:");
+            for (Nutrient nutrient : Nutrient.values()) {
+                double amount = nutrients.get(nutrient);
+                if (amount != 0) {
+                    view.displayMessage(nutrient.getDisplayName() + ": " + String.format("%.1f", amount) + " " + nutrient.getUnit());
+                }
+            }
+        }
+        
         // Display food entries
         List<FoodEntry> entries = log.getEntries();
         if (!entries.isEmpty()) {
@@ -569,6 +852,42 @@ public class MenuController {
         }
     }
 
+    public void showCalorieTrends() {
+        CalorieRollups rollups = logManager.getRollups();
+        
+        view.displayMessage("\n--- Calorie Trends up to " + currentDate + " ---");
+        
+        for (int days : TREND_WINDOW_DAYS) {
+            LocalDate from = currentDate.minusDays(days - 1);
+            view.displayMessage("Last " + days + " days: " + logManager.getTotalCalories(from, currentDate)
+                               + " calories over " + logManager.getLoggedDayCount(from, currentDate) + " logged day(s), "
+                               + String.format("%.0f", logManager.getAverageCalories(from, currentDate)) + " average, "
+                               + logManager.getMaxDailyCalories(from, currentDate) + " highest");
+        }
+        
+        view.displayMessage("\nWeekly (week starting):");
+        displayRollupTotals(rollups.getTotals(CalorieRollups.Period.WEEK,
+                currentDate.minusWeeks(TREND_WEEKS - 1), currentDate));
+        
+        view.displayMessage("\nMonthly:");
+        displayRollupTotals(rollups.getTotals(CalorieRollups.Period.MONTH,
+                currentDate.minusMonths(TREND_MONTHS - 1), currentDate));
+        
+        view.displayMessage("\nYearly:");
+        displayRollupTotals(rollups.getTotals(CalorieRollups.Period.YEAR,
+                LocalDate.MIN, currentDate));
+    }
+    
+    private void displayRollupTotals(Map<LocalDate, Long> totals) {
+        if (totals.isEmpty()) {
+            view.displayMessage("No calories logged.");
+            return;
+        }
+        for (Map.Entry<LocalDate, Long> total : totals.entrySet()) {
+            view.displayMessage(total.getKey() + ": " + total.getValue() + " calories");
+        }
+    }
+    
     public void undo() {
         if (commandHistory.canUndo()) {
             commandHistory.undo();
@@ -11,12 +11,22 @@ import java.util.List;
 public class BasicFood implements Food {
     private String name;
     private List<String> keywords;
+    private String searchName; // Normalized name used for matching
+    private String[] searchKeywords; // Normalized keywords used for matching
     private int caloriesPerServing;
+    private NutrientVector nutrientsPerServing;
     
     public BasicFood(String name, List<String> keywords, int caloriesPerServing) {
+        this(name, keywords, caloriesPerServing, NutrientVector.ZERO);
+    }
+    
+    public BasicFood(String name, List<String> keywords, int caloriesPerServing, NutrientVector nutrientsPerServing) {
         this.name = name;
         this.keywords = new ArrayList<>(keywords);
         this.caloriesPerServing = caloriesPerServing;
+        this.nutrientsPerServing = nutrientsPerServing;
+        this.searchName = SearchKeys.normalize(name);
+        this.searchKeywords = SearchKeys.normalizeAll(keywords);
     }
     
     @Override
@@ -34,15 +44,19 @@ public class BasicFood implements Food {
         return caloriesPerServing;
     }
     
+    @Override
+    public NutrientVector getNutrientsPerServing() {
+        return nutrientsPerServing;
+    }
+    
     @Override
     public boolean matchesKeyword(String keyword) {
-        String lowerKeyword = keyword.toLowerCase();
-        for (String k : keywords) {
-            if (k.toLowerCase().contains(lowerKeyword)) {
-                return true;
-            }
-        }
-        return name.toLowerCase().contains(lowerKeyword);
+        return SearchKeys.matches(searchName, searchKeywords, keyword);
+    }
+    
+    @Override
+    public int matchScore(String keyword) {
+        return SearchKeys.score(searchName, searchKeywords, keyword);
     }
     
     @Override
@@ -78,6 +92,9 @@ public class BasicFood implements Food {
         }
         
         sb.append("|").append(caloriesPerServing);
+        if (!nutrientsPerServing.isZero()) {
+            sb.append("|").append(nutrientsPerServing.toFileString());
+        }
         return sb.toString();
     }
 }
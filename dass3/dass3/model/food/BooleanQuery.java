@@ -0,0 +1,138 @@
+// File: model/food/BooleanQuery.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Parses and evaluates boolean keyword queries such as
+ * {@code protein AND (breakfast OR lunch) AND NOT dairy} against a
+ * KeywordBitmapIndex snapshot.
+ *
+ * NOT binds tightest, then AND, then OR. Operators are case-insensitive,
+ * terms next to each other are ANDed, and terms containing spaces can be
+ * written in double quotes.
+ */
+class BooleanQuery {
+    private final List<String> tokens;
+    private final KeywordBitmapIndex.Snapshot index;
+    private int position;
+    
+    private BooleanQuery(List<String> tokens, KeywordBitmapIndex.Snapshot index) {
+        this.tokens = tokens;
+        this.index = index;
+    }
+    
+    /**
+     * Returns the ordinals of the foods matching the expression
+     *
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static BitSet evaluate(String expression, KeywordBitmapIndex.Snapshot index) {
+        BooleanQuery query = new BooleanQuery(tokenize(expression), index);
+        if (query.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        
+        BitSet result = query.parseOr();
+        if (query.position < query.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + query.tokens.get(query.position) + "'");
+        }
+        return result;
+    }
+    
+    private BitSet parseOr() {
+        BitSet result = parseAnd();
+        while (isOperator(peek(), "OR")) {
+            position++;
+            result.or(parseAnd());
+        }
+        return result;
+    }
+    
+    private BitSet parseAnd() {
+        BitSet result = parseNot();
+        while (true) {
+            String next = peek();
+            if (isOperator(next, "AND")) {
+                position++;
+            } else if (next == null || next.equals(")") || isOperator(next, "OR")) {
+                return result;
+            }
+            result.and(parseNot());
+        }
+    }
+    
+    private BitSet parseNot() {
+        if (isOperator(peek(), "NOT")) {
+            position++;
+            BitSet result = index.all();
+            result.andNot(parseNot());
+            return result;
+        }
+        return parseTerm();
+    }
+    
+    private BitSet parseTerm() {
+        String token = peek();
+        if (token == null) {
+            throw new IllegalArgumentException("Query ends unexpectedly");
+        }
+        position++;
+        
+        if (token.equals("(")) {
+            BitSet result = parseOr();
+            if (!")".equals(peek())) {
+                throw new IllegalArgumentException("Missing ')'");
+            }
+            position++;
+            return result;
+        }
+        if (token.equals(")") || isOperator(token, "AND") || isOperator(token, "OR")) {
+            throw new IllegalArgumentException("Unexpected '" + token + "'");
+        }
+        if (token.startsWith("\"")) {
+            token = token.substring(1);
+        }
+        return index.lookup(token);
+    }
+    
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+    
+    // Quoted terms keep their leading quote so they are never taken as operators
+    private static boolean isOperator(String token, String operator) {
+        return token != null && token.equalsIgnoreCase(operator);
+    }
+    
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                int end = expression.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Missing closing quote");
+                }
+                tokens.add(expression.substring(i, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                       && "()\"".indexOf(expression.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+}
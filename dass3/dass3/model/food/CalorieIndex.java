@@ -0,0 +1,82 @@
+// File: model/food/CalorieIndex.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted index of foods by calories per serving, for range queries.
+ *
+ * Each entry is packed into one long, calories in the high half and the
+ * food's ordinal in the low half, so entries sort by calories and then
+ * ordinal. The entries are boxed Longs in a ConcurrentSkipListMap that maps
+ * each one to its food's name: adding, removing or re-keying a food is
+ * O(log n) and allocates a box and a skip list node, and a range query is one
+ * O(log n) seek followed by a walk over the hits. Range queries take no lock;
+ * one that overlaps the re-keying of a food may see it under its old
+ * calories, its new calories or both. Updates are applied one at a time.
+ */
+class CalorieIndex {
+    private final ConcurrentNavigableMap<Long, String> entries;
+    // Only touched by the synchronized update methods
+    private final Map<String, Long> entryByName;
+    private final List<Integer> freeOrdinals;
+    private int nextOrdinal;
+    
+    CalorieIndex() {
+        entries = new ConcurrentSkipListMap<>();
+        entryByName = new HashMap<>();
+        freeOrdinals = new ArrayList<>();
+    }
+    
+    /**
+     * Indexes the food under the given calories, replacing any entry it had
+     */
+    synchronized void add(String name, int calories) {
+        remove(name);
+        
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.remove(freeOrdinals.size() - 1);
+        Long entry = pack(calories, ordinal);
+        entries.put(entry, name);
+        entryByName.put(name, entry);
+    }
+    
+    synchronized void addAll(Collection<Food> foods) {
+        for (Food food : foods) {
+            add(food.getName(), food.getCaloriesPerServing());
+        }
+    }
+    
+    synchronized void remove(String name) {
+        Long entry = entryByName.remove(name);
+        if (entry == null) {
+            return;
+        }
+        
+        entries.remove(entry);
+        freeOrdinals.add((int) (long) entry);
+    }
+    
+    /**
+     * Returns the names of foods with between min and max calories per
+     * serving (inclusive), lowest calories first
+     */
+    List<String> range(int minCalories, int maxCalories) {
+        if (minCalories > maxCalories) {
+            return new ArrayList<>();
+        }
+        
+        long from = pack(minCalories, 0);
+        long to = ((long) maxCalories << 32) | 0xFFFFFFFFL;
+        return new ArrayList<>(entries.subMap(from, true, to, true).values());
+    }
+    
+    private static long pack(int calories, int ordinal) {
+        return ((long) calories << 32) | (ordinal & 0xFFFFFFFFL);
+    }
+}
@@ -2,10 +2,15 @@
 // File: model/food/CompositeFood.java
 package yada.model.food;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents a composite food item made up of other foods
@@ -13,16 +18,113 @@ import java.util.Map;
 public class CompositeFood implements Food {
     private String name;
     private List<String> keywords;
+    private String searchName; // Normalized name used for matching
+    private String[] searchKeywords; // Normalized keywords used for matching
     private Map<Food, Integer> components; // Map of component foods and their serving counts
+    private Set<CompositeFood> parents; // Composites that use this one as a component
+    private volatile FlattenedRecipe flattened; // Cleared whenever this or a nested component changes
+    private FoodDatabase database; // Database holding this composite, told about new components
+    private Set<RecipeListener> listeners; // Told when this composite's per-serving values change
     
     public CompositeFood(String name, List<String> keywords) {
         this.name = name;
         this.keywords = new ArrayList<>(keywords);
         this.components = new HashMap<>();
+        this.parents = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.listeners = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.searchName = SearchKeys.normalize(name);
+        this.searchKeywords = SearchKeys.normalizeAll(keywords);
     }
     
     public void addComponent(Food component, int servings) {
         components.put(component, servings);
+        if (component instanceof CompositeFood) {
+            ((CompositeFood) component).parents.add(this);
+        }
+        invalidateFlattened();
+        if (database != null) {
+            database.componentAdded(this, component);
+        }
+        notifyRecipeChanged();
+    }
+    
+    public void addRecipeListener(RecipeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeRecipeListener(RecipeListener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Tells the listeners of this composite and of every composite using it,
+    // directly or nested, since all of their per-serving values just changed
+    private void notifyRecipeChanged() {
+        if (listeners.isEmpty() && parents.isEmpty()) {
+            // Nothing to tell, as for a composite still being built
+            return;
+        }
+        
+        Set<CompositeFood> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<CompositeFood> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CompositeFood composite = pending.pop();
+            if (!seen.add(composite)) {
+                continue;
+            }
+            
+            for (RecipeListener listener : new ArrayList<>(composite.listeners)) {
+                listener.recipeChanged(composite);
+            }
+            pending.addAll(composite.parents);
+        }
+    }
+    
+    void setDatabase(FoodDatabase database) {
+        this.database = database;
+    }
+    
+    FoodDatabase getDatabase() {
+        return database;
+    }
+    
+    // Only composites with a compiled recipe need clearing: the parents of one
+    // without were either cleared along with it or have never been compiled
+    private void invalidateFlattened() {
+        if (flattened == null) {
+            return;
+        }
+        flattened = null;
+        for (CompositeFood parent : parents) {
+            parent.invalidateFlattened();
+        }
+    }
+    
+    /**
+     * Returns this composite compiled into its basic foods and the total
+     * servings of each per serving of the composite. The result is cached
+     * and rebuilt after any nested component changes.
+     */
+    public FlattenedRecipe flatten() {
+        FlattenedRecipe recipe = flattened;
+        if (recipe != null) {
+            return recipe;
+        }
+        
+        Map<Food, Integer> totals = new IdentityHashMap<>();
+        for (Map.Entry<Food, Integer> entry : components.entrySet()) {
+            Food component = entry.getKey();
+            int servings = entry.getValue();
+            if (component instanceof CompositeFood) {
+                ((CompositeFood) component).flatten().addTo(totals, servings);
+            } else {
+                totals.merge(component, servings, Integer::sum);
+            }
+        }
+        
+        recipe = FlattenedRecipe.of(totals);
+        flattened = recipe;
+        return recipe;
     }
     
     @Override
@@ -37,24 +139,22 @@ public class CompositeFood implements Food {
     
     @Override
     public int getCaloriesPerServing() {
-        int totalCalories = 0;
-        for (Map.Entry<Food, Integer> entry : components.entrySet()) {
-            Food component = entry.getKey();
-            int servings = entry.getValue();
-            totalCalories += component.getCaloriesPerServing() * servings;
-        }
-        return totalCalories;
+        return flatten().getTotalCalories();
+    }
+    
+    @Override
+    public NutrientVector getNutrientsPerServing() {
+        return flatten().getTotalNutrients();
     }
     
     @Override
     public boolean matchesKeyword(String keyword) {
-        String lowerKeyword = keyword.toLowerCase();
-        for (String k : keywords) {
-            if (k.toLowerCase().contains(lowerKeyword)) {
-                return true;
-            }
-        }
-        return name.toLowerCase().contains(lowerKeyword);
+        return SearchKeys.matches(searchName, searchKeywords, keyword);
+    }
+    
+    @Override
+    public int matchScore(String keyword) {
+        return SearchKeys.score(searchName, searchKeywords, keyword);
     }
     
     
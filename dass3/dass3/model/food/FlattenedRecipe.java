@@ -0,0 +1,76 @@
+// File: model/food/FlattenedRecipe.java
+package yada.model.food;
+
+import java.util.Map;
+
+/**
+ * A composite food compiled down to its leaf foods: parallel arrays of each
+ * basic food and the total servings of it in one serving of the composite,
+ * however deeply it was nested
+ */
+public final class FlattenedRecipe {
+    private final Food[] foods;
+    private final int[] servings;
+    private final int totalCalories; // Leaf calories summed when compiled
+    private final NutrientVector totalNutrients;
+    
+    private FlattenedRecipe(Food[] foods, int[] servings) {
+        this.foods = foods;
+        this.servings = servings;
+        
+        int total = 0;
+        double[] nutrients = NutrientVector.accumulator();
+        for (int i = 0; i < servings.length; i++) {
+            total += foods[i].getCaloriesPerServing() * servings[i];
+            foods[i].getNutrientsPerServing().addScaledTo(nutrients, servings[i]);
+        }
+        this.totalCalories = total;
+        this.totalNutrients = NutrientVector.of(nutrients);
+    }
+    
+    /**
+     * Builds a recipe from leaf foods and their total servings
+     */
+    static FlattenedRecipe of(Map<Food, Integer> totals) {
+        Food[] foods = new Food[totals.size()];
+        int[] servings = new int[totals.size()];
+        
+        int i = 0;
+        for (Map.Entry<Food, Integer> entry : totals.entrySet()) {
+            foods[i] = entry.getKey();
+            servings[i] = entry.getValue();
+            i++;
+        }
+        return new FlattenedRecipe(foods, servings);
+    }
+    
+    public int size() {
+        return foods.length;
+    }
+    
+    public Food getFood(int index) {
+        return foods[index];
+    }
+    
+    public int getServings(int index) {
+        return servings[index];
+    }
+    
+    public int getTotalCalories() {
+        return totalCalories;
+    }
+    
+    public NutrientVector getTotalNutrients() {
+        return totalNutrients;
+    }
+    
+    /**
+     * Adds this recipe's leaf servings, scaled by the given number of
+     * servings, into totals
+     */
+    void addTo(Map<Food, Integer> totals, int scale) {
+        for (int i = 0; i < foods.length; i++) {
+            totals.merge(foods[i], servings[i] * scale, Integer::sum);
+        }
+    }
+}
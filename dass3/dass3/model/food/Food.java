@@ -11,8 +11,10 @@ public interface Food {
     String getName();
     List<String> getKeywords();
     int getCaloriesPerServing();
+    NutrientVector getNutrientsPerServing();
     boolean matchesKeyword(String keyword);
     boolean matchesAllKeywords(List<String> keywords);
     boolean matchesAnyKeyword(List<String> keywords);
+    int matchScore(String keyword);
     String toFileString();
 }
@@ -2,23 +2,106 @@
 // File: model/food/FoodDatabase.java
 package yada.model.food;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
 
 /**
- * Maintains a database of all available foods
+ * Maintains a database of all available foods.
+ *
+ * Safe to share between threads: lookups and searches never block, while
+ * addFood and removeFood are applied one at a time so the search indexes stay
+ * in step with each other. Every index a read path touches is either a
+ * concurrent collection or an immutable snapshot, and so is the search cache.
+ * The foods themselves live in a persistent map, so snapshot() can hand out
+ * an immutable point-in-time view for free.
  */
 public class FoodDatabase {
-    private Map<String, Food> foods;
+    private static final int SEARCH_CACHE_SIZE = 256;
+    
+    // Best match first: higher score, then name
+    private static final Comparator<ScoredFood> RANKING =
+        Comparator.comparingInt((ScoredFood scored) -> scored.score).reversed()
+                  .thenComparing(scored -> scored.food.getName());
+    
+    private final Object writeLock = new Object();
+    private volatile PersistentHashMap<String, Food> foods; // Replaced, never mutated, on each write
+    private TrigramIndex searchIndex;
+    private NamePrefixIndex nameIndex;
+    private FuzzyIndex fuzzyIndex;
+    private KeywordBitmapIndex keywordIndex;
+    private CalorieIndex calorieIndex;
+    private Map<String, Set<String>> compositesUsing; // Component name -> names of composites using it
+    private volatile ForkJoinPool searchPool; // Null unless parallel search is enabled
+    private SearchCache searchCache;
+    private Set<String> dirtyNames; // Foods added, replaced, changed or removed since the last save
     
     public FoodDatabase() {
-        foods = new HashMap<>();
+        foods = PersistentHashMap.empty();
+        searchIndex = new TrigramIndex();
+        nameIndex = new NamePrefixIndex();
+        fuzzyIndex = new FuzzyIndex();
+        keywordIndex = new KeywordBitmapIndex();
+        calorieIndex = new CalorieIndex();
+        compositesUsing = new ConcurrentHashMap<>();
+        searchCache = new SearchCache(SEARCH_CACHE_SIZE);
+        dirtyNames = new HashSet<>();
     }
     
     public void addFood(Food food) {
-        foods.put(food.getName(), food);
+        synchronized (writeLock) {
+            Food oldFood = foods.get(food.getName());
+            foods = foods.put(food.getName(), food);
+            searchIndex.add(food);
+            nameIndex.add(food.getName());
+            fuzzyIndex.add(food);
+            keywordIndex.add(food);
+            calorieIndex.add(food.getName(), food.getCaloriesPerServing());
+            unregisterComponents(oldFood);
+            registerComponents(food);
+            searchCache.invalidate(oldFood, food);
+            dirtyNames.add(food.getName());
+        }
+    }
+    
+    /**
+     * Adds many foods at once, as when loading. Each search index is built in
+     * one pass over all of them rather than updated food by food. A later
+     * food replaces an earlier one of the same name, as with addFood.
+     */
+    public void addFoods(Collection<? extends Food> newFoods) {
+        Map<String, Food> byName = new LinkedHashMap<>();
+        for (Food food : newFoods) {
+            byName.put(food.getName(), food);
+        }
+        Collection<Food> added = byName.values();
+        
+        synchronized (writeLock) {
+            for (Food food : added) {
+                Food oldFood = foods.get(food.getName());
+                foods = foods.put(food.getName(), food);
+                unregisterComponents(oldFood);
+                registerComponents(food);
+                dirtyNames.add(food.getName());
+            }
+            searchIndex.addAll(added);
+            nameIndex.addAll(byName.keySet());
+            fuzzyIndex.addAll(added);
+            keywordIndex.addAll(added);
+            calorieIndex.addAll(added);
+            searchCache.clear();
+        }
     }
     
     public Food getFood(String name) {
@@ -26,33 +109,332 @@ public class FoodDatabase {
     }
     
     public void removeFood(String name) {
-        foods.remove(name);
+        synchronized (writeLock) {
+            Food oldFood = foods.get(name);
+            foods = foods.remove(name);
+            searchIndex.remove(name);
+            nameIndex.remove(name);
+            fuzzyIndex.remove(name);
+            keywordIndex.remove(name);
+            calorieIndex.remove(name);
+            unregisterComponents(oldFood);
+            searchCache.invalidate(oldFood, null);
+            if (oldFood != null) {
+                dirtyNames.add(name);
+            }
+        }
+    }
+    
+    /**
+     * Returns the names of the composites that use the given food directly
+     * as a component, in alphabetical order
+     */
+    public List<String> getCompositesUsing(String foodName) {
+        Set<String> names = compositesUsing.get(foodName);
+        return names == null ? new ArrayList<>() : new ArrayList<>(names);
+    }
+    
+    /**
+     * Returns the names of the foods added, replaced, given new components or
+     * removed since the last call, and starts tracking afresh. Take these
+     * before reading the foods to save, so a change made in between is saved
+     * again next time rather than lost.
+     */
+    public Set<String> takeDirtyFoodNames() {
+        synchronized (writeLock) {
+            Set<String> names = dirtyNames;
+            dirtyNames = new HashSet<>();
+            return names;
+        }
+    }
+    
+    void componentAdded(CompositeFood composite, Food component) {
+        synchronized (writeLock) {
+            if (foods.get(composite.getName()) == composite) {
+                compositesUsing.computeIfAbsent(component.getName(), n -> new ConcurrentSkipListSet<>()).add(composite.getName());
+                dirtyNames.add(composite.getName());
+                reindexCalories(composite.getName());
+            }
+        }
+    }
+    
+    // The named composite's calories have changed, and so have those of every
+    // composite using it, however deeply nested
+    private void reindexCalories(String name) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(name);
+        while (!pending.isEmpty()) {
+            String next = pending.pop();
+            if (!seen.add(next)) {
+                continue;
+            }
+            
+            Food food = foods.get(next);
+            if (food != null) {
+                calorieIndex.add(next, food.getCaloriesPerServing());
+            }
+            Set<String> users = compositesUsing.get(next);
+            if (users != null) {
+                pending.addAll(users);
+            }
+        }
+    }
+    
+    private void registerComponents(Food food) {
+        if (food instanceof CompositeFood) {
+            CompositeFood composite = (CompositeFood) food;
+            composite.setDatabase(this);
+            for (Food component : composite.getComponents().keySet()) {
+                compositesUsing.computeIfAbsent(component.getName(), n -> new ConcurrentSkipListSet<>()).add(composite.getName());
+            }
+        }
+    }
+    
+    private void unregisterComponents(Food food) {
+        if (food instanceof CompositeFood) {
+            CompositeFood composite = (CompositeFood) food;
+            if (composite.getDatabase() == this) {
+                composite.setDatabase(null);
+            }
+            for (Food component : composite.getComponents().keySet()) {
+                Set<String> names = compositesUsing.get(component.getName());
+                if (names != null) {
+                    names.remove(composite.getName());
+                    if (names.isEmpty()) {
+                        compositesUsing.remove(component.getName());
+                    }
+                }
+            }
+        }
     }
     
     public List<Food> getAllFoods() {
-        return new ArrayList<>(foods.values());
+        return foods.values();
+    }
+    
+    /**
+     * Returns an immutable view of the catalog as it is now. Taking a snapshot
+     * is O(1); later adds and removes do not affect it.
+     */
+    public FoodSnapshot snapshot() {
+        return new FoodSnapshot(foods);
+    }
+    
+    /**
+     * Enables parallel verification of search candidates on the given pool,
+     * or turns it off again when pool is null. Only large candidate sets are
+     * split up; results are the same as with a sequential search.
+     */
+    public void setSearchPool(ForkJoinPool pool) {
+        this.searchPool = pool;
+    }
+    
+    /**
+     * Returns the cache used by searchFoods, mainly for its hit, miss and
+     * eviction counters
+     */
+    public SearchCache getSearchCache() {
+        return searchCache;
     }
     
     public List<Food> searchFoods(List<String> keywords, boolean matchAll) {
+        List<Food> results = searchCache.get(keywords, matchAll);
+        if (results != null) {
+            return results;
+        }
+        long generation = searchCache.generation();
+        
+        Collection<Food> candidates = searchCandidates(keywords, matchAll);
+        if (searchPool != null && candidates.size() > ParallelSearch.PARTITION_SIZE) {
+            results = ParallelSearch.verify(searchPool, new ArrayList<>(candidates), keywords, matchAll);
+        } else {
+            results = new ArrayList<>();
+            for (Food food : candidates) {
+                if (SearchKeys.matches(food, keywords, matchAll)) {
+                    results.add(food);
+                }
+            }
+        }
+        
+        searchCache.put(keywords, matchAll, results, generation);
+        return results;
+    }
+    
+    /**
+     * Returns one page of matching foods, most relevant first. Only the best
+     * offset + limit matches are kept while searching, so memory does not grow
+     * with the number of foods that match.
+     */
+    public List<Food> searchFoodsRanked(List<String> keywords, boolean matchAll, int offset, int limit) {
         List<Food> results = new ArrayList<>();
+        if (offset < 0 || limit <= 0) {
+            return results;
+        }
         
-        for (Food food : foods.values()) {
-            boolean matches;
-            if (matchAll) {
-                matches = food.matchesAllKeywords(keywords);
-            } else {
-                matches = food.matchesAnyKeyword(keywords);
+        int capacity = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        // Min-heap on relevance, so the weakest of the kept matches is at the head
+        PriorityQueue<ScoredFood> best = new PriorityQueue<>(Math.min(capacity, 1024),
+                                                             RANKING.reversed());
+        
+        Collection<Food> candidates = searchCandidates(keywords, matchAll);
+        boolean verified = false;
+        if (searchPool != null && candidates.size() > ParallelSearch.PARTITION_SIZE) {
+            candidates = ParallelSearch.verify(searchPool, new ArrayList<>(candidates), keywords, matchAll);
+            verified = true;
+        }
+        
+        for (Food food : candidates) {
+            if (!verified && !SearchKeys.matches(food, keywords, matchAll)) {
+                continue;
             }
             
-            if (matches) {
-                results.add(food);
+            int score = 0;
+            for (String keyword : keywords) {
+                score += food.matchScore(keyword);
+            }
+            
+            ScoredFood scored = new ScoredFood(food, score);
+            if (best.size() < capacity) {
+                best.add(scored);
+            } else if (RANKING.compare(scored, best.peek()) < 0) {
+                best.poll();
+                best.add(scored);
+            }
+        }
+        
+        List<ScoredFood> ranked = new ArrayList<>(best);
+        ranked.sort(RANKING);
+        for (int i = offset; i < ranked.size(); i++) {
+            results.add(ranked.get(i).food);
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Typo-tolerant search: a keyword matches a food if one of the words in its
+     * name, or one of its keywords, is within maxDistance edits of it
+     */
+    public List<Food> searchFoodsFuzzy(List<String> keywords, boolean matchAll, int maxDistance) {
+        Set<String> names = null;
+        for (String keyword : keywords) {
+            if (keyword.trim().isEmpty()) {
+                continue;
+            }
+            
+            Set<String> matches = fuzzyIndex.lookup(keyword, maxDistance);
+            if (names == null) {
+                names = matches;
+            } else if (matchAll) {
+                names.retainAll(matches);
+            } else {
+                names.addAll(matches);
             }
         }
         
+        List<Food> results = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                addIfPresent(results, name);
+            }
+            results.sort(Comparator.comparing(Food::getName));
+        }
+        return results;
+    }
+    
+    /**
+     * Evaluates a boolean keyword query such as
+     * "protein AND (breakfast OR lunch) AND NOT dairy". A term matches foods
+     * that have it as a keyword or as a word of their name (case-insensitive).
+     *
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public List<Food> queryFoods(String query) {
+        List<String> names = keywordIndex.query(query);
+        
+        List<Food> results = new ArrayList<>(names.size());
+        for (String name : names) {
+            addIfPresent(results, name);
+        }
+        results.sort(Comparator.comparing(Food::getName));
         return results;
     }
     
+    // Only verify the foods the trigram index could not rule out; fall back
+    // to a full scan when a keyword is too short to be looked up
+    private Collection<Food> searchCandidates(List<String> keywords, boolean matchAll) {
+        // Resolve every candidate against one version of the catalog
+        PersistentHashMap<String, Food> current = foods;
+        Set<String> candidateNames = searchIndex.candidates(keywords, matchAll);
+        if (candidateNames == null) {
+            return current.values();
+        }
+        
+        List<Food> candidates = new ArrayList<>(candidateNames.size());
+        for (String name : candidateNames) {
+            Food food = current.get(name);
+            if (food != null) {
+                candidates.add(food);
+            }
+        }
+        return candidates;
+    }
+    
+    // An index may briefly name a food that another thread is removing
+    private void addIfPresent(List<Food> results, String name) {
+        Food food = foods.get(name);
+        if (food != null) {
+            results.add(food);
+        }
+    }
+    
+    /**
+     * Returns the foods with between minCalories and maxCalories per serving
+     * (inclusive), lowest calories first. A composite is re-indexed whenever
+     * it or a composite nested in it gains a component.
+     */
+    public List<Food> findFoodsByCalories(int minCalories, int maxCalories) {
+        PersistentHashMap<String, Food> current = foods;
+        List<Food> results = new ArrayList<>();
+        for (String name : calorieIndex.range(minCalories, maxCalories)) {
+            Food food = current.get(name);
+            if (food != null) {
+                results.add(food);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Same as findFoodsByCalories, keeping only foods that also match the
+     * keywords under the usual searchFoods rules
+     */
+    public List<Food> findFoodsByCalories(int minCalories, int maxCalories, List<String> keywords, boolean matchAll) {
+        List<Food> results = findFoodsByCalories(minCalories, maxCalories);
+        results.removeIf(food -> !SearchKeys.matches(food, keywords, matchAll));
+        return results;
+    }
+    
+    /**
+     * Returns up to limit food names that start with the given prefix
+     * (case-insensitive), in alphabetical order
+     */
+    public List<String> autocomplete(String prefix, int limit) {
+        return nameIndex.complete(prefix, limit);
+    }
+    
     public List<String> getFoodNames() {
-        return new ArrayList<>(foods.keySet());
+        return foods.keys();
+    }
+    
+    private static class ScoredFood {
+        private final Food food;
+        private final int score;
+        
+        ScoredFood(Food food, int score) {
+            this.food = food;
+            this.score = score;
+        }
     }
 }
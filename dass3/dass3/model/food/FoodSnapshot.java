@@ -0,0 +1,48 @@
+// File: model/food/FoodSnapshot.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable point-in-time view of a FoodDatabase. Later changes to the
+ * database are not visible through a snapshot, and taking one never blocks
+ * writers.
+ */
+public class FoodSnapshot {
+    private final PersistentHashMap<String, Food> foods;
+    
+    FoodSnapshot(PersistentHashMap<String, Food> foods) {
+        this.foods = foods;
+    }
+    
+    public Food getFood(String name) {
+        return foods.get(name);
+    }
+    
+    public List<Food> getAllFoods() {
+        return foods.values();
+    }
+    
+    public List<String> getFoodNames() {
+        return foods.keys();
+    }
+    
+    public int size() {
+        return foods.size();
+    }
+    
+    /**
+     * Same matching rules as FoodDatabase.searchFoods, evaluated against the
+     * foods in this snapshot
+     */
+    public List<Food> searchFoods(List<String> keywords, boolean matchAll) {
+        List<Food> results = new ArrayList<>();
+        foods.forEach((name, food) -> {
+            if (SearchKeys.matches(food, keywords, matchAll)) {
+                results.add(food);
+            }
+        });
+        return results;
+    }
+}
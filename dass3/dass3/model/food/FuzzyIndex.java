@@ -0,0 +1,239 @@
+// File: model/food/FuzzyIndex.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index over the words of food names and keywords, used for typo-tolerant
+ * lookups. Each term maps to the foods that use it.
+ *
+ * Every term is cut into MAX_INDEXED_DISTANCE + 1 pieces. A query within that
+ * many edits of a term leaves at least one piece untouched, and that piece
+ * sits in the query at most as many characters away as there were edits. So
+ * looking up the query's substrings near each piece position finds every
+ * candidate, which is then checked with a bounded edit distance. Wider
+ * lookups fall back to checking every term.
+ *
+ * Lookups may run concurrently with a single writer; add and remove must be
+ * called by one thread at a time.
+ */
+class FuzzyIndex {
+    static final int MAX_INDEXED_DISTANCE = 2;
+    private static final int PIECES = MAX_INDEXED_DISTANCE + 1;
+    
+    private Map<String, Set<String>> postings; // Term -> names of foods using it; unused terms are dropped
+    private Map<String, Set<String>> termsByPiece; // "length:slot:piece" -> terms with that piece in that slot
+    private Map<String, Food> indexedFoods; // Food name -> the food indexed, whose terms are recomputed on removal
+    
+    FuzzyIndex() {
+        postings = new ConcurrentHashMap<>();
+        termsByPiece = new ConcurrentHashMap<>();
+        indexedFoods = new HashMap<>();
+    }
+    
+    void add(Food food) {
+        remove(food.getName());
+        
+        Set<String> terms = terms(food);
+        for (String term : terms) {
+            Set<String> names = postings.get(term);
+            if (names == null) {
+                names = ConcurrentHashMap.newKeySet();
+                postings.put(term, names);
+                indexPieces(term);
+            }
+            names.add(food.getName());
+        }
+        indexedFoods.put(food.getName(), food);
+    }
+    
+    /**
+     * Adds foods with distinct names in one pass: postings are gathered in
+     * plain lists first, so each concurrent set is created at its final size
+     * and every new term has its pieces indexed once
+     */
+    void addAll(Collection<Food> foods) {
+        Map<String, List<String>> gathered = new HashMap<>();
+        for (Food food : foods) {
+            remove(food.getName());
+            Set<String> terms = terms(food);
+            for (String term : terms) {
+                gathered.computeIfAbsent(term, t -> new ArrayList<>()).add(food.getName());
+            }
+            indexedFoods.put(food.getName(), food);
+        }
+        
+        for (Map.Entry<String, List<String>> entry : gathered.entrySet()) {
+            String term = entry.getKey();
+            Set<String> names = postings.get(term);
+            if (names == null) {
+                names = ConcurrentHashMap.newKeySet(entry.getValue().size());
+                postings.put(term, names);
+                indexPieces(term);
+            }
+            names.addAll(entry.getValue());
+        }
+    }
+    
+    private void indexPieces(String term) {
+        for (int slot = 0; slot < PIECES; slot++) {
+            termsByPiece.computeIfAbsent(pieceKey(term, slot), k -> ConcurrentHashMap.newKeySet()).add(term);
+        }
+    }
+    
+    void remove(String name) {
+        Food food = indexedFoods.remove(name);
+        if (food == null) {
+            return;
+        }
+        
+        for (String term : terms(food)) {
+            Set<String> names = postings.get(term);
+            names.remove(name);
+            if (names.isEmpty()) {
+                postings.remove(term);
+                for (int slot = 0; slot < PIECES; slot++) {
+                    String key = pieceKey(term, slot);
+                    Set<String> pieceTerms = termsByPiece.get(key);
+                    pieceTerms.remove(term);
+                    if (pieceTerms.isEmpty()) {
+                        termsByPiece.remove(key);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the names of foods with a name word or keyword within
+     * maxDistance edits of the query
+     */
+    Set<String> lookup(String query, int maxDistance) {
+        String term = SearchKeys.normalize(query);
+        Set<String> names = new HashSet<>();
+        Collection<String> candidates = maxDistance <= MAX_INDEXED_DISTANCE
+            ? candidates(term, maxDistance)
+            : postings.keySet();
+        
+        // Rows for the edit distance, shared by every candidate
+        int[] previous = new int[term.length() + Math.max(maxDistance, 0) + 1];
+        int[] current = new int[previous.length];
+        for (String candidate : candidates) {
+            if (candidate.length() >= previous.length) {
+                previous = new int[candidate.length() + 1];
+                current = new int[previous.length];
+            }
+            if (distance(term, candidate, maxDistance, previous, current) <= maxDistance) {
+                // A writer may have just dropped the term
+                Set<String> foods = postings.get(candidate);
+                if (foods != null) {
+                    names.addAll(foods);
+                }
+            }
+        }
+        return names;
+    }
+    
+    // Terms sharing an unedited piece with the query, at most maxDistance
+    // characters from where the piece sits in the term
+    private Set<String> candidates(String query, int maxDistance) {
+        Set<String> candidates = new HashSet<>();
+        int length = query.length();
+        for (int termLength = Math.max(1, length - maxDistance); termLength <= length + maxDistance; termLength++) {
+            for (int slot = 0; slot < PIECES; slot++) {
+                int start = pieceStart(termLength, slot);
+                int pieceLength = pieceStart(termLength, slot + 1) - start;
+                int last = Math.min(start + maxDistance, length - pieceLength);
+                for (int at = Math.max(0, start - maxDistance); at <= last; at++) {
+                    Set<String> terms = termsByPiece.get(pieceKey(termLength, slot, query.substring(at, at + pieceLength)));
+                    if (terms != null) {
+                        candidates.addAll(terms);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+    
+    private static int pieceStart(int termLength, int slot) {
+        return slot * termLength / PIECES;
+    }
+    
+    private static String pieceKey(String term, int slot) {
+        int length = term.length();
+        return pieceKey(length, slot, term.substring(pieceStart(length, slot), pieceStart(length, slot + 1)));
+    }
+    
+    private static String pieceKey(int termLength, int slot, String piece) {
+        return termLength + ":" + slot + ":" + piece;
+    }
+    
+    private static Set<String> terms(Food food) {
+        Set<String> terms = new HashSet<>();
+        collectTerms(SearchKeys.normalize(food.getName()), terms);
+        for (String keyword : SearchKeys.normalizeAll(food.getKeywords())) {
+            terms.add(keyword);
+            collectTerms(keyword, terms);
+        }
+        return terms;
+    }
+    
+    private static void collectTerms(String text, Set<String> terms) {
+        for (String word : text.split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+    }
+    
+    /**
+     * Levenshtein distance between a and b, or limit + 1 if it is more than
+     * limit. Only the diagonal band that can stay within the limit is filled
+     * in, and the scan stops once a whole row is over it. The two rows must
+     * be longer than b.
+     */
+    static int distance(String a, String b, int limit, int[] previous, int[] current) {
+        int over = limit + 1;
+        if (Math.abs(a.length() - b.length()) > limit) {
+            return over;
+        }
+        
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - limit);
+            int to = Math.min(b.length(), i + limit);
+            current[0] = Math.min(i, over);
+            current[from - 1] = from == 1 ? current[0] : over;
+            int rowMin = current[from - 1];
+            
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                current[j] = Math.min(value, over);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            // The next row reads one cell past this band
+            if (to < b.length()) {
+                current[to + 1] = over;
+            }
+            if (rowMin > limit) {
+                return over;
+            }
+            
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
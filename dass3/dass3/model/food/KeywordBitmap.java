@@ -0,0 +1,154 @@
+// File: model/food/KeywordBitmap.java
+package yada.model.food;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Set of food ordinals for one keyword. Rare keywords are stored as a plain
+ * array of ordinals; once a keyword is common enough that a bitmap is the
+ * smaller form, it switches to a bitmap split into fixed-size chunks.
+ *
+ * Not thread-safe: KeywordBitmapIndex changes only copies that no query can
+ * see yet, and seals each one before publishing it. The chunks are kept in a
+ * persistent map, so copying a bitmap costs nothing. The first change to a
+ * chunk after a copy copies just that chunk; later changes before the seal
+ * go to the copy in place.
+ */
+class KeywordBitmap {
+    // An ordinal costs 32 bits in array form and one bit of the range in bitmap form
+    private static final int BITS_PER_ORDINAL = Integer.SIZE;
+    private static final int WORDS_PER_CHUNK = 16;
+    private static final int BITS_PER_CHUNK = WORDS_PER_CHUNK * Long.SIZE;
+    
+    private int[] ordinals; // Unordered; null once dense
+    private int size;
+    private int maxOrdinal;
+    private PersistentHashMap<Integer, long[]> chunks; // Chunk index -> its words, none all zero; null while sparse
+    private Set<long[]> ownChunks; // Chunks copied since this bitmap was; null while sparse or once sealed
+    
+    KeywordBitmap() {
+        ordinals = new int[4];
+    }
+    
+    KeywordBitmap copy() {
+        KeywordBitmap copy = new KeywordBitmap();
+        copy.ordinals = ordinals == null ? null : ordinals.clone();
+        copy.size = size;
+        copy.maxOrdinal = maxOrdinal;
+        copy.chunks = chunks;
+        copy.ownChunks = chunks == null ? null : newChunkSet();
+        return copy;
+    }
+    
+    void add(int ordinal) {
+        if (chunks != null) {
+            set(ordinal);
+            return;
+        }
+        
+        if (size == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+        }
+        ordinals[size++] = ordinal;
+        maxOrdinal = Math.max(maxOrdinal, ordinal);
+        
+        if (size > 64 && (long) size * BITS_PER_ORDINAL > maxOrdinal + 1L) {
+            chunks = PersistentHashMap.empty();
+            ownChunks = newChunkSet();
+            for (int i = 0; i < size; i++) {
+                set(ordinals[i]);
+            }
+            ordinals = null;
+        }
+    }
+    
+    void remove(int ordinal) {
+        if (chunks != null) {
+            Integer index = ordinal / BITS_PER_CHUNK;
+            long[] chunk = chunks.get(index);
+            if (chunk == null) {
+                return;
+            }
+            
+            chunk = writableChunk(index, chunk);
+            chunk[ordinal % BITS_PER_CHUNK / Long.SIZE] &= ~(1L << ordinal);
+            if (isZero(chunk)) {
+                chunks = chunks.remove(index);
+            }
+            return;
+        }
+        
+        for (int i = 0; i < size; i++) {
+            if (ordinals[i] == ordinal) {
+                ordinals[i] = ordinals[--size];
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Ends the changes to this bitmap, before it becomes visible to queries
+     */
+    void seal() {
+        ownChunks = null;
+    }
+    
+    boolean isEmpty() {
+        return chunks != null ? chunks.size() == 0 : size == 0;
+    }
+    
+    /**
+     * Returns a fresh BitSet holding this keyword's ordinals, for combining
+     * with other keywords
+     */
+    BitSet toBitSet() {
+        if (chunks != null) {
+            int chunkCount = 0;
+            for (int index : chunks.keys()) {
+                chunkCount = Math.max(chunkCount, index + 1);
+            }
+            long[] words = new long[chunkCount * WORDS_PER_CHUNK];
+            chunks.forEach((index, chunk) -> System.arraycopy(chunk, 0, words, index * WORDS_PER_CHUNK, WORDS_PER_CHUNK));
+            return BitSet.valueOf(words);
+        }
+        
+        BitSet result = new BitSet();
+        for (int i = 0; i < size; i++) {
+            result.set(ordinals[i]);
+        }
+        return result;
+    }
+    
+    private void set(int ordinal) {
+        Integer index = ordinal / BITS_PER_CHUNK;
+        long[] chunk = writableChunk(index, chunks.get(index));
+        chunk[ordinal % BITS_PER_CHUNK / Long.SIZE] |= 1L << ordinal;
+    }
+    
+    private long[] writableChunk(Integer index, long[] chunk) {
+        if (chunk != null && ownChunks.contains(chunk)) {
+            return chunk;
+        }
+        chunk = chunk == null ? new long[WORDS_PER_CHUNK] : chunk.clone();
+        ownChunks.add(chunk);
+        chunks = chunks.put(index, chunk);
+        return chunk;
+    }
+    
+    private static Set<long[]> newChunkSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+    
+    private static boolean isZero(long[] chunk) {
+        for (long word : chunk) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,186 @@
+// File: model/food/KeywordBitmapIndex.java
+package yada.model.food;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Gives every food a small integer ordinal and keeps a bitmap of ordinals per
+ * keyword, so boolean keyword queries can be answered with bit operations.
+ *
+ * Queries read an immutable snapshot and never block. Updates are applied one
+ * at a time: each copies the bitmaps it touches, builds a new snapshot that
+ * shares everything else with the old one, and publishes it.
+ */
+class KeywordBitmapIndex {
+    // Only touched by the synchronized update methods
+    private final Map<String, Integer> ordinals; // Food name -> ordinal
+    private final List<Set<String>> termsByOrdinal; // Null for free slots
+    private final Deque<Integer> freeOrdinals;
+    
+    private volatile Snapshot snapshot;
+    
+    KeywordBitmapIndex() {
+        ordinals = new HashMap<>();
+        termsByOrdinal = new ArrayList<>();
+        freeOrdinals = new ArrayDeque<>();
+        snapshot = new Snapshot(PersistentHashMap.empty(), PersistentHashMap.empty(), new BitSet());
+    }
+    
+    synchronized void add(Food food) {
+        Update update = new Update();
+        update.removeOrdinal(food.getName());
+        update.addOrdinal(food);
+        update.publish();
+    }
+    
+    /**
+     * Adds foods as one update, copying each touched bitmap only once
+     */
+    synchronized void addAll(Collection<Food> foods) {
+        Update update = new Update();
+        for (Food food : foods) {
+            update.removeOrdinal(food.getName());
+            update.addOrdinal(food);
+        }
+        update.publish();
+    }
+    
+    synchronized void remove(String name) {
+        Update update = new Update();
+        update.removeOrdinal(name);
+        update.publish();
+    }
+    
+    /**
+     * Evaluates a boolean query and returns the names of the matching foods
+     *
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    List<String> query(String expression) {
+        Snapshot current = snapshot;
+        BitSet matches = BooleanQuery.evaluate(expression, current);
+        List<String> result = new ArrayList<>(matches.cardinality());
+        for (int ordinal = matches.nextSetBit(0); ordinal >= 0; ordinal = matches.nextSetBit(ordinal + 1)) {
+            result.add(current.names.get(ordinal));
+        }
+        return result;
+    }
+    
+    private static Set<String> terms(Food food) {
+        Set<String> terms = new HashSet<>();
+        for (String word : SearchKeys.normalize(food.getName()).split("\\s+")) {
+            if (!word.isEmpty()) {
+                terms.add(word);
+            }
+        }
+        for (String keyword : SearchKeys.normalizeAll(food.getKeywords())) {
+            terms.add(keyword);
+        }
+        return terms;
+    }
+    
+    /**
+     * One published version of the index. Neither it nor its bitmaps change
+     * once published.
+     */
+    static final class Snapshot {
+        private final PersistentHashMap<String, KeywordBitmap> bitmaps;
+        private final PersistentHashMap<Integer, String> names; // Ordinal -> food name
+        private final BitSet live;
+        
+        private Snapshot(PersistentHashMap<String, KeywordBitmap> bitmaps,
+                         PersistentHashMap<Integer, String> names, BitSet live) {
+            this.bitmaps = bitmaps;
+            this.names = names;
+            this.live = live;
+        }
+        
+        /**
+         * Returns the ordinals of foods that have the term as a keyword or as
+         * a word of their name
+         */
+        BitSet lookup(String term) {
+            KeywordBitmap bitmap = bitmaps.get(SearchKeys.normalize(term));
+            return bitmap == null ? new BitSet() : bitmap.toBitSet();
+        }
+        
+        /**
+         * Returns the ordinals of all foods
+         */
+        BitSet all() {
+            return (BitSet) live.clone();
+        }
+    }
+    
+    // Builds the next snapshot from the current one
+    private final class Update {
+        private PersistentHashMap<String, KeywordBitmap> bitmaps = snapshot.bitmaps;
+        private PersistentHashMap<Integer, String> names = snapshot.names;
+        private final BitSet live = (BitSet) snapshot.live.clone();
+        private final Set<String> copied = new HashSet<>(); // Terms whose bitmap is already private to this update
+        
+        void addOrdinal(Food food) {
+            int ordinal;
+            if (freeOrdinals.isEmpty()) {
+                ordinal = termsByOrdinal.size();
+                termsByOrdinal.add(null);
+            } else {
+                ordinal = freeOrdinals.pop();
+            }
+            
+            Set<String> terms = terms(food);
+            for (String term : terms) {
+                writableBitmap(term).add(ordinal);
+            }
+            termsByOrdinal.set(ordinal, terms);
+            ordinals.put(food.getName(), ordinal);
+            names = names.put(ordinal, food.getName());
+            live.set(ordinal);
+        }
+        
+        void removeOrdinal(String name) {
+            Integer ordinal = ordinals.remove(name);
+            if (ordinal == null) {
+                return;
+            }
+            
+            for (String term : termsByOrdinal.get(ordinal)) {
+                KeywordBitmap bitmap = writableBitmap(term);
+                bitmap.remove(ordinal);
+                if (bitmap.isEmpty()) {
+                    bitmaps = bitmaps.remove(term);
+                    copied.remove(term);
+                }
+            }
+            termsByOrdinal.set(ordinal, null);
+            names = names.remove(ordinal);
+            live.clear(ordinal);
+            freeOrdinals.push(ordinal);
+        }
+        
+        void publish() {
+            for (String term : copied) {
+                bitmaps.get(term).seal();
+            }
+            snapshot = new Snapshot(bitmaps, names, live);
+        }
+        
+        private KeywordBitmap writableBitmap(String term) {
+            KeywordBitmap bitmap = bitmaps.get(term);
+            if (copied.add(term)) {
+                bitmap = bitmap == null ? new KeywordBitmap() : bitmap.copy();
+                bitmaps = bitmaps.put(term, bitmap);
+            }
+            return bitmap;
+        }
+    }
+}
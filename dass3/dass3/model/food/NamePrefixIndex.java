@@ -0,0 +1,64 @@
+// File: model/food/NamePrefixIndex.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index of food names used to answer prefix (autocomplete) queries
+ */
+class NamePrefixIndex {
+    // Separates the normalized name from the original name inside a key, and
+    // sorts before every other character so "egg" comes before "egg roll"
+    private static final char SEPARATOR = '\u0000';
+    
+    private NavigableSet<String> keys; // normalized name + SEPARATOR + original name
+    
+    NamePrefixIndex() {
+        keys = new ConcurrentSkipListSet<>();
+    }
+    
+    void add(String name) {
+        keys.add(key(name));
+    }
+    
+    void addAll(Collection<String> names) {
+        List<String> newKeys = new ArrayList<>(names.size());
+        for (String name : names) {
+            newKeys.add(key(name));
+        }
+        keys.addAll(newKeys);
+    }
+    
+    void remove(String name) {
+        keys.remove(key(name));
+    }
+    
+    /**
+     * Returns up to limit food names starting with the prefix (ignoring case),
+     * in alphabetical order
+     */
+    List<String> complete(String prefix, int limit) {
+        List<String> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        
+        String from = SearchKeys.normalize(prefix);
+        String to = from + Character.MAX_VALUE;
+        for (String key : keys.subSet(from, true, to, false)) {
+            results.add(key.substring(key.indexOf(SEPARATOR) + 1));
+            if (results.size() == limit) {
+                break;
+            }
+        }
+        return results;
+    }
+    
+    private static String key(String name) {
+        return SearchKeys.normalize(name) + SEPARATOR + name;
+    }
+}
@@ -0,0 +1,58 @@
+// File: model/food/Nutrient.java
+package yada.model.food;
+
+/**
+ * Nutrients tracked per serving besides calories. The ordinal of each
+ * constant is its slot in a NutrientVector.
+ */
+public enum Nutrient {
+    PROTEIN("Protein", "g"),
+    CARBOHYDRATES("Carbohydrates", "g"),
+    FAT("Fat", "g"),
+    SATURATED_FAT("Saturated Fat", "g"),
+    FIBRE("Fibre", "g"),
+    SUGAR("Sugar", "g"),
+    SODIUM("Sodium", "mg"),
+    POTASSIUM("Potassium", "mg"),
+    CHOLESTEROL("Cholesterol", "mg"),
+    CALCIUM("Calcium", "mg"),
+    IRON("Iron", "mg"),
+    MAGNESIUM("Magnesium", "mg"),
+    ZINC("Zinc", "mg"),
+    VITAMIN_A("Vitamin A", "mcg"),
+    VITAMIN_C("Vitamin C", "mg"),
+    VITAMIN_D("Vitamin D", "mcg"),
+    VITAMIN_B12("Vitamin B12", "mcg"),
+    FOLATE("Folate", "mcg");
+    
+    private final String displayName;
+    private final String unit;
+    
+    Nutrient(String displayName, String unit) {
+        this.displayName = displayName;
+        this.unit = unit;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public String getUnit() {
+        return unit;
+    }
+    
+    /**
+     * Looks up a nutrient by constant or display name, ignoring case, spaces
+     * and underscores (so "vitamin c", "VITAMIN_C" and "VitaminC" all work).
+     * Returns null if there is no such nutrient.
+     */
+    public static Nutrient fromName(String name) {
+        String key = name.replace(" ", "").replace("_", "").toLowerCase();
+        for (Nutrient nutrient : values()) {
+            if (nutrient.name().replace("_", "").toLowerCase().equals(key)) {
+                return nutrient;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,112 @@
+// File: model/food/NutrientVector.java
+package yada.model.food;
+
+import java.util.Arrays;
+
+/**
+ * Immutable fixed-width vector of nutrient amounts, one double per Nutrient.
+ *
+ * Aggregation works on raw double[] accumulators with simple counted loops
+ * over the whole width, which HotSpot compiles to SIMD instructions where
+ * the CPU has them and to plain scalar code elsewhere.
+ */
+public final class NutrientVector {
+    public static final int WIDTH = Nutrient.values().length;
+    public static final NutrientVector ZERO = new NutrientVector(new double[WIDTH]);
+    
+    private final double[] values;
+    
+    private NutrientVector(double[] values) {
+        this.values = values;
+    }
+    
+    public double get(Nutrient nutrient) {
+        return values[nutrient.ordinal()];
+    }
+    
+    public boolean isZero() {
+        for (double value : values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns a copy of this vector with one nutrient changed
+     */
+    public NutrientVector with(Nutrient nutrient, double amount) {
+        double[] copy = values.clone();
+        copy[nutrient.ordinal()] = amount;
+        return new NutrientVector(copy);
+    }
+    
+    /**
+     * Returns a new, zeroed accumulator for use with addScaledTo
+     */
+    public static double[] accumulator() {
+        return new double[WIDTH];
+    }
+    
+    /**
+     * Adds this vector multiplied by scale into the accumulator
+     */
+    public void addScaledTo(double[] accumulator, double scale) {
+        for (int i = 0; i < WIDTH; i++) {
+            accumulator[i] += values[i] * scale;
+        }
+    }
+    
+    /**
+     * Wraps a finished accumulator; the array must not be changed afterwards
+     */
+    public static NutrientVector of(double[] accumulator) {
+        if (accumulator.length != WIDTH) {
+            throw new IllegalArgumentException("Expected " + WIDTH + " nutrient values, got " + accumulator.length);
+        }
+        return new NutrientVector(accumulator);
+    }
+    
+    /**
+     * Formats the amounts as semicolon-separated values in Nutrient order,
+     * for the food file. Zero amounts are left empty.
+     */
+    public String toFileString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < WIDTH; i++) {
+            if (i > 0) {
+                sb.append(";");
+            }
+            if (values[i] != 0) {
+                sb.append(values[i]);
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Parses the output of toFileString. Missing trailing values (from files
+     * written before a nutrient was added) are read as zero.
+     */
+    public static NutrientVector parse(String text) {
+        double[] values = new double[WIDTH];
+        String[] parts = text.split(";");
+        for (int i = 0; i < parts.length && i < WIDTH; i++) {
+            if (!parts[i].isEmpty()) {
+                values[i] = Double.parseDouble(parts[i]);
+            }
+        }
+        return new NutrientVector(values);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NutrientVector && Arrays.equals(values, ((NutrientVector) o).values);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(values);
+    }
+}
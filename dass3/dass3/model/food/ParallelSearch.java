@@ -0,0 +1,64 @@
+// File: model/food/ParallelSearch.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Verifies search candidates in parallel by splitting them into partitions
+ * on a fork/join pool. Results keep the candidates' order, so they are the
+ * same as a sequential pass over the same list.
+ */
+class ParallelSearch {
+    // Partitions smaller than this are verified on the current thread
+    static final int PARTITION_SIZE = 4096;
+    
+    private ParallelSearch() {
+    }
+    
+    static List<Food> verify(ForkJoinPool pool, List<Food> candidates, List<String> keywords, boolean matchAll) {
+        return pool.invoke(new VerifyTask(candidates, 0, candidates.size(), keywords, matchAll));
+    }
+    
+    private static class VerifyTask extends RecursiveTask<List<Food>> {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Food> candidates;
+        private final int from;
+        private final int to;
+        private final List<String> keywords;
+        private final boolean matchAll;
+        
+        VerifyTask(List<Food> candidates, int from, int to, List<String> keywords, boolean matchAll) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.keywords = keywords;
+            this.matchAll = matchAll;
+        }
+        
+        @Override
+        protected List<Food> compute() {
+            if (to - from <= PARTITION_SIZE) {
+                List<Food> results = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    Food food = candidates.get(i);
+                    if (SearchKeys.matches(food, keywords, matchAll)) {
+                        results.add(food);
+                    }
+                }
+                return results;
+            }
+            
+            int middle = (from + to) >>> 1;
+            VerifyTask left = new VerifyTask(candidates, from, middle, keywords, matchAll);
+            VerifyTask right = new VerifyTask(candidates, middle, to, keywords, matchAll);
+            right.fork();
+            List<Food> results = left.compute();
+            results.addAll(right.join());
+            return results;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+// File: model/food/PersistentHashMap.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash array mapped trie. put and remove return a new map that
+ * shares every untouched branch with the old one, so keeping old versions
+ * around is cheap and each version can be read without locking.
+ */
+final class PersistentHashMap<K, V> {
+    private static final Object NOT_FOUND = new Object();
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+    
+    private final Node root;
+    private final int size;
+    
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Object value = root.find(0, key.hashCode(), key);
+        return value == NOT_FOUND ? null : (V) value;
+    }
+    
+    PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node start = root == null ? BitmapNode.EMPTY : root;
+        Node newRoot = start.put(0, key.hashCode(), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+    
+    PersistentHashMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.remove(0, key.hashCode(), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+    
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+    
+    List<K> keys() {
+        List<K> keys = new ArrayList<>(size);
+        forEach((key, value) -> keys.add(key));
+        return keys;
+    }
+    
+    List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+    
+    private abstract static class Node {
+        abstract Object find(int shift, int hash, Object key);
+        
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+        
+        // Returns this if the key is absent, null if the node became empty
+        abstract Node remove(int shift, int hash, Object key);
+        
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+    
+    // Slots are (key, value) pairs, or (null, child node) for a sub-trie
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+        
+        private final int bitmap;
+        private final Object[] array;
+        
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+        
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return NOT_FOUND;
+            }
+            int i = index(bit);
+            Object slotKey = array[2 * i];
+            Object slotValue = array[2 * i + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : NOT_FOUND;
+        }
+        
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+            
+            if ((bitmap & bit) == 0) {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, 2 * i);
+                newArray[2 * i] = key;
+                newArray[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, newArray, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+            
+            Object slotKey = array[2 * i];
+            Object slotValue = array[2 * i + 1];
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).put(shift + BITS, hash, key, value, added);
+                return child == slotValue ? this : withSlot(i, null, child);
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : withSlot(i, slotKey, value);
+            }
+            
+            added[0] = true;
+            Node child = pair(shift + BITS, slotKey, slotValue, hash, key, value);
+            return withSlot(i, null, child);
+        }
+        
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object slotKey = array[2 * i];
+            Object slotValue = array[2 * i + 1];
+            
+            if (slotKey == null) {
+                Node child = ((Node) slotValue).remove(shift + BITS, hash, key);
+                if (child == slotValue) {
+                    return this;
+                }
+                if (child != null) {
+                    return withSlot(i, null, child);
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, newArray, 2 * i, newArray.length - 2 * i);
+            return new BitmapNode(bitmap & ~bit, newArray);
+        }
+        
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+        
+        private BitmapNode withSlot(int i, Object key, Object value) {
+            Object[] newArray = array.clone();
+            newArray[2 * i] = key;
+            newArray[2 * i + 1] = value;
+            return new BitmapNode(bitmap, newArray);
+        }
+        
+        private static Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added)
+                        .put(shift, hash2, key2, value2, added);
+        }
+    }
+    
+    // Keys whose full hash codes are equal, stored as a flat (key, value) list
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+        
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+        
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        @Override
+        Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? NOT_FOUND : array[i + 1];
+        }
+        
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down next to the new key
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[] {null, this}).put(shift, hash, key, value, added);
+            }
+            
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (array[i + 1] == value) {
+                    return this;
+                }
+                Object[] newArray = array.clone();
+                newArray[i + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+        
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, newArray.length - i);
+            return new CollisionNode(hash, newArray);
+        }
+        
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+}
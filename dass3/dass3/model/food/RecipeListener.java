@@ -0,0 +1,14 @@
+// File: model/food/RecipeListener.java
+package yada.model.food;
+
+/**
+ * Told when a composite's per-serving values change, so anything holding
+ * totals computed from it can refresh them
+ */
+public interface RecipeListener {
+    /**
+     * Called after the composite, or a composite nested anywhere in it,
+     * gains a component
+     */
+    void recipeChanged(CompositeFood composite);
+}
@@ -0,0 +1,185 @@
+// File: model/food/SearchCache.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of keyword search results. Entries are dropped only when a
+ * changed food could appear in (or disappear from) their results.
+ *
+ * Backed by a ConcurrentHashMap, so lookups never block. Each entry records
+ * when it was last used, and a put over capacity evicts the least recently
+ * used entry; under concurrent puts this is approximate LRU.
+ */
+public class SearchCache {
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Entry> entries;
+    private final AtomicLong clock; // Ticks on every use, for LRU order
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final AtomicLong generation; // Bumped on every invalidation
+    
+    SearchCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>();
+        this.clock = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.generation = new AtomicLong();
+    }
+    
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    public long getEvictions() {
+        return evictions.sum();
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Returns a copy of the cached results, or null on a miss
+     */
+    List<Food> get(List<String> keywords, boolean matchAll) {
+        Entry entry = entries.get(new Key(keywords, matchAll));
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastUsed = clock.incrementAndGet();
+        return new ArrayList<>(entry.results);
+    }
+    
+    /**
+     * Returns the current generation, to be passed to put once the results
+     * have been computed
+     */
+    long generation() {
+        return generation.get();
+    }
+    
+    /**
+     * Stores results computed when the cache was at the given generation.
+     * They are discarded if a food changed in the meantime, since they may
+     * already be stale.
+     */
+    void put(List<String> keywords, boolean matchAll, List<Food> results, long computedAt) {
+        if (capacity <= 0 || computedAt != generation.get()) {
+            return;
+        }
+        
+        Key key = new Key(keywords, matchAll);
+        Entry entry = new Entry(new ArrayList<>(results), clock.incrementAndGet());
+        entries.put(key, entry);
+        // An invalidation that ran between the check and the put may have
+        // missed this entry
+        if (computedAt != generation.get()) {
+            entries.remove(key, entry);
+            return;
+        }
+        
+        while (entries.size() > capacity) {
+            evictEldest();
+        }
+    }
+    
+    /**
+     * Drops every cached result, for a change touching many foods at once
+     */
+    void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+    
+    /**
+     * Drops the entries whose results could change because a food was
+     * replaced, added (oldFood is null) or removed (newFood is null)
+     */
+    void invalidate(Food oldFood, Food newFood) {
+        generation.incrementAndGet();
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            Key key = keys.next();
+            if (key.matches(oldFood) || key.matches(newFood)) {
+                keys.remove();
+            }
+        }
+    }
+    
+    private void evictEldest() {
+        Map.Entry<Key, Entry> eldest = null;
+        for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+            if (eldest == null || candidate.getValue().lastUsed < eldest.getValue().lastUsed) {
+                eldest = candidate;
+            }
+        }
+        if (eldest != null && entries.remove(eldest.getKey(), eldest.getValue())) {
+            evictions.increment();
+        }
+    }
+    
+    private static class Entry {
+        private final List<Food> results;
+        private volatile long lastUsed;
+        
+        Entry(List<Food> results, long lastUsed) {
+            this.results = results;
+            this.lastUsed = lastUsed;
+        }
+    }
+    
+    // Normalized, de-duplicated keywords plus match mode. Keyword order does
+    // not change which foods match, so it is not part of the key.
+    private static class Key {
+        private final List<String> keywords;
+        private final boolean matchAll;
+        
+        Key(List<String> keywords, boolean matchAll) {
+            TreeSet<String> normalized = new TreeSet<>();
+            for (String keyword : keywords) {
+                normalized.add(SearchKeys.normalize(keyword));
+            }
+            this.keywords = new ArrayList<>(normalized);
+            this.matchAll = matchAll;
+        }
+        
+        boolean matches(Food food) {
+            if (food == null) {
+                return false;
+            }
+            return SearchKeys.matches(food, keywords, matchAll);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return matchAll == other.matchAll && keywords.equals(other.keywords);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(keywords, matchAll);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+// File: model/food/SearchKeys.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for building and matching the normalized search keys stored on foods
+ */
+final class SearchKeys {
+    private SearchKeys() {
+    }
+    
+    /**
+     * Case-folds and trims a name or keyword for storage as a search key
+     */
+    static String normalize(String text) {
+        return text.trim().toLowerCase();
+    }
+    
+    /**
+     * Normalizes a list of keywords, dropping any that are empty once trimmed
+     * (e.g. the leftovers of "a,,b" after splitting on commas)
+     */
+    static String[] normalizeAll(List<String> keywords) {
+        List<String> normalized = new ArrayList<>(keywords.size());
+        for (String keyword : keywords) {
+            String key = normalize(keyword);
+            if (!key.isEmpty()) {
+                normalized.add(key);
+            }
+        }
+        return normalized.toArray(new String[0]);
+    }
+    
+    // Relevance scores for a single keyword, best first
+    static final int SCORE_EXACT_NAME = 100;
+    static final int SCORE_NAME_PREFIX = 50;
+    static final int SCORE_KEYWORD = 25;
+    static final int SCORE_SUBSTRING = 10;
+    
+    /**
+     * Returns true if the normalized key contains the query, ignoring case and
+     * surrounding whitespace in the query. Does not allocate.
+     */
+    static boolean contains(String key, String query) {
+        int start = trimStart(query);
+        int length = trimEnd(query, start) - start;
+        return indexOf(key, query, start, length) >= 0;
+    }
+    
+    /**
+     * Scores how well the query matches a food: an exact name match beats a
+     * name prefix, which beats a keyword (exact or prefix) hit, which beats a
+     * substring anywhere. Returns 0 if the query does not match at all.
+     */
+    static int score(String normalizedName, String[] normalizedKeywords, String query) {
+        int start = trimStart(query);
+        int length = trimEnd(query, start) - start;
+        
+        if (normalizedName.regionMatches(true, 0, query, start, length)) {
+            return normalizedName.length() == length ? SCORE_EXACT_NAME : SCORE_NAME_PREFIX;
+        }
+        
+        boolean substring = indexOf(normalizedName, query, start, length) >= 0;
+        for (String key : normalizedKeywords) {
+            if (key.regionMatches(true, 0, query, start, length)) {
+                return SCORE_KEYWORD;
+            }
+            if (!substring && indexOf(key, query, start, length) >= 0) {
+                substring = true;
+            }
+        }
+        return substring ? SCORE_SUBSTRING : 0;
+    }
+    
+    private static int indexOf(String key, String query, int start, int length) {
+        for (int i = 0; i + length <= key.length(); i++) {
+            if (key.regionMatches(true, i, query, start, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private static int trimStart(String query) {
+        int start = 0;
+        while (start < query.length() && query.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+    
+    private static int trimEnd(String query, int start) {
+        int end = query.length();
+        while (end > start && query.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+    
+    /**
+     * Returns true if the food's normalized name or any of its normalized
+     * keywords contains the query
+     */
+    static boolean matches(String normalizedName, String[] normalizedKeywords, String query) {
+        for (String key : normalizedKeywords) {
+            if (contains(key, query)) {
+                return true;
+            }
+        }
+        return contains(normalizedName, query);
+    }
+    
+    /**
+     * Returns true if the food matches every keyword, or any of them when
+     * matchAll is false. This is the rule every keyword search applies.
+     */
+    static boolean matches(Food food, List<String> keywords, boolean matchAll) {
+        if (matchAll) {
+            return food.matchesAllKeywords(keywords);
+        } else {
+            return food.matchesAnyKeyword(keywords);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// File: model/food/TrigramIndex.java
+package yada.model.food;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted trigram index over food names and keywords, used to narrow
+ * keyword searches down to a set of candidate foods.
+ *
+ * Lookups may run concurrently with a single writer; add and remove must be
+ * called by one thread at a time.
+ */
+class TrigramIndex {
+    static final int GRAM_LENGTH = 3;
+    
+    private Map<String, Set<String>> postings; // Trigram -> names of foods containing it
+    private Map<String, Food> indexedFoods; // Food name -> the food indexed, whose trigrams are recomputed on removal
+    
+    TrigramIndex() {
+        postings = new ConcurrentHashMap<>();
+        indexedFoods = new HashMap<>();
+    }
+    
+    void add(Food food) {
+        remove(food.getName());
+        
+        Set<String> grams = grams(food);
+        for (String gram : grams) {
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(food.getName());
+        }
+        indexedFoods.put(food.getName(), food);
+    }
+    
+    /**
+     * Adds foods with distinct names in one pass: postings are gathered in
+     * plain lists first, so each concurrent set is created at its final size
+     * and filled once
+     */
+    void addAll(Collection<Food> foods) {
+        Map<String, List<String>> gathered = new HashMap<>();
+        for (Food food : foods) {
+            remove(food.getName());
+            Set<String> grams = grams(food);
+            for (String gram : grams) {
+                gathered.computeIfAbsent(gram, g -> new ArrayList<>()).add(food.getName());
+            }
+            indexedFoods.put(food.getName(), food);
+        }
+        
+        for (Map.Entry<String, List<String>> entry : gathered.entrySet()) {
+            Set<String> names = postings.get(entry.getKey());
+            if (names == null) {
+                names = ConcurrentHashMap.newKeySet(entry.getValue().size());
+                postings.put(entry.getKey(), names);
+            }
+            names.addAll(entry.getValue());
+        }
+    }
+    
+    void remove(String name) {
+        Food food = indexedFoods.remove(name);
+        if (food == null) {
+            return;
+        }
+        
+        for (String gram : grams(food)) {
+            Set<String> names = postings.get(gram);
+            if (names != null) {
+                names.remove(name);
+                if (names.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns true if the keyword is long enough to be answered from the index
+     */
+    static boolean isIndexable(String keyword) {
+        return keyword.trim().length() >= GRAM_LENGTH;
+    }
+    
+    /**
+     * Returns the names of all foods whose name or keywords could contain the
+     * given keyword. The keyword must be indexable.
+     */
+    Set<String> candidates(String keyword) {
+        String lowerKeyword = SearchKeys.normalize(keyword);
+        Set<String> result = null;
+        
+        for (int i = 0; i + GRAM_LENGTH <= lowerKeyword.length(); i++) {
+            Set<String> names = postings.get(lowerKeyword.substring(i, i + GRAM_LENGTH));
+            if (names == null) {
+                return new HashSet<>();
+            }
+            
+            if (result == null) {
+                result = new HashSet<>(names);
+            } else {
+                result.retainAll(names);
+            }
+            
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Returns candidate names for a multi-keyword query, or null if one of the
+     * keywords is too short to use the index and a full scan is required
+     */
+    Set<String> candidates(List<String> keywords, boolean matchAll) {
+        Set<String> result = null;
+        
+        for (String keyword : keywords) {
+            if (!isIndexable(keyword)) {
+                if (matchAll) {
+                    // A short keyword does not narrow an intersection; skip it here
+                    // and let the verification step check it
+                    continue;
+                }
+                return null;
+            }
+            
+            Set<String> names = candidates(keyword);
+            if (result == null) {
+                result = names;
+            } else if (matchAll) {
+                result.retainAll(names);
+            } else {
+                result.addAll(names);
+            }
+            
+            if (matchAll && result.isEmpty()) {
+                break;
+            }
+        }
+        
+        return result;
+    }
+    
+    private static Set<String> grams(Food food) {
+        Set<String> grams = new HashSet<>();
+        collectGrams(SearchKeys.normalize(food.getName()), grams);
+        for (String keyword : SearchKeys.normalizeAll(food.getKeywords())) {
+            collectGrams(keyword, grams);
+        }
+        return grams;
+    }
+    
+    private static void collectGrams(String text, Set<String> grams) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+    }
+}
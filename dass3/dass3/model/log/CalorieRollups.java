@@ -0,0 +1,103 @@
+// File: model/log/CalorieRollups.java
+package yada.model.log;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Calories consumed per ISO week, month and year, keyed by the first day of
+ * each period. Periods with no calories are left out.
+ */
+public class CalorieRollups {
+    public enum Period {
+        WEEK, MONTH, YEAR;
+        
+        /**
+         * Returns the first day of the period containing the given date
+         * (Monday for ISO weeks)
+         */
+        public LocalDate start(LocalDate date) {
+            switch (this) {
+                case WEEK:
+                    return date.with(DayOfWeek.MONDAY);
+                case MONTH:
+                    return date.withDayOfMonth(1);
+                default:
+                    return date.withDayOfYear(1);
+            }
+        }
+    }
+    
+    private Map<Period, NavigableMap<LocalDate, Long>> totals;
+    
+    public CalorieRollups() {
+        totals = new EnumMap<>(Period.class);
+        for (Period period : Period.values()) {
+            totals.put(period, new TreeMap<>());
+        }
+    }
+    
+    /**
+     * Adds calories (negative to take them away) consumed on a date to every
+     * period containing it
+     */
+    void add(LocalDate date, long calories) {
+        if (calories == 0) {
+            return;
+        }
+        for (Period period : Period.values()) {
+            NavigableMap<LocalDate, Long> byStart = totals.get(period);
+            LocalDate start = period.start(date);
+            long total = byStart.getOrDefault(start, 0L) + calories;
+            if (total == 0) {
+                byStart.remove(start);
+            } else {
+                byStart.put(start, total);
+            }
+        }
+    }
+    
+    /**
+     * Sets the total for the period starting on the given date, as read back
+     * from a saved copy
+     */
+    public void put(Period period, LocalDate start, long calories) {
+        if (!period.start(start).equals(start)) {
+            throw new IllegalArgumentException(start + " is not the start of a " + period.name().toLowerCase());
+        }
+        if (calories == 0) {
+            totals.get(period).remove(start);
+        } else {
+            totals.get(period).put(start, calories);
+        }
+    }
+    
+    /**
+     * Returns the calories consumed in the period containing the given date
+     */
+    public long getTotal(Period period, LocalDate date) {
+        return totals.get(period).getOrDefault(period.start(date), 0L);
+    }
+    
+    /**
+     * Returns the totals of every period, oldest first, keyed by period start
+     */
+    public NavigableMap<LocalDate, Long> getTotals(Period period) {
+        return new TreeMap<>(totals.get(period));
+    }
+    
+    /**
+     * Returns the totals of the periods overlapping the given dates (both
+     * inclusive), oldest first, keyed by period start
+     */
+    public NavigableMap<LocalDate, Long> getTotals(Period period, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new TreeMap<>();
+        }
+        return new TreeMap<>(totals.get(period).subMap(period.start(from), true, to, true));
+    }
+}
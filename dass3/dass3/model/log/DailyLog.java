@@ -2,20 +2,32 @@
 // File: model/log/DailyLog.java
 package yada.model.log;
 
+import yada.model.food.NutrientVector;
+
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Represents a daily food consumption log
+ * Represents a daily food consumption log.
+ *
+ * The calorie and nutrient totals are running sums over the entries. The
+ * DailyLogManager holding the log refreshes them when a logged composite's
+ * recipe changes; a log outside any manager recomputes them on every read.
  */
 public class DailyLog {
     private LocalDate date;
     private List<FoodEntry> entries;
+    private DailyLogManager manager; // Manager holding this log, told about entry changes
+    private int totalCalories; // Running sum over entries
+    private double[] nutrientSums; // Running sum over entries, as a NutrientVector accumulator
+    private NutrientVector totalNutrients; // Snapshot of nutrientSums, null once it changes
     
     public DailyLog(LocalDate date) {
         this.date = date;
         this.entries = new ArrayList<>();
+        this.nutrientSums = NutrientVector.accumulator();
+        this.totalNutrients = NutrientVector.ZERO;
     }
     
     public LocalDate getDate() {
@@ -24,10 +36,39 @@ public class DailyLog {
     
     public void addEntry(FoodEntry entry) {
         entries.add(entry);
+        addToTotals(entry, 1);
+        if (manager != null) {
+            manager.entryAdded(this, entry);
+        }
     }
     
     public void removeEntry(FoodEntry entry) {
-        entries.remove(entry);
+        if (!entries.remove(entry)) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            // Start over from exact zeros rather than keep rounding leftovers
+            recomputeTotals();
+        } else {
+            addToTotals(entry, -1);
+        }
+        if (manager != null) {
+            manager.entryRemoved(this, entry);
+        }
+    }
+    
+    void setManager(DailyLogManager manager) {
+        this.manager = manager;
+        // A composite may have changed while no manager was watching
+        recomputeTotals();
+    }
+    
+    DailyLogManager getManager() {
+        return manager;
+    }
+    
+    int getEntryCount() {
+        return entries.size();
     }
     
     public List<FoodEntry> getEntries() {
@@ -35,11 +76,39 @@ public class DailyLog {
     }
     
     public int getTotalCalories() {
-        int total = 0;
+        if (manager == null) {
+            recomputeTotals();
+        }
+        return totalCalories;
+    }
+    
+    public NutrientVector getTotalNutrients() {
+        if (manager == null) {
+            recomputeTotals();
+        }
+        if (totalNutrients == null) {
+            totalNutrients = NutrientVector.of(nutrientSums.clone());
+        }
+        return totalNutrients;
+    }
+    
+    private void addToTotals(FoodEntry entry, int sign) {
+        totalCalories += sign * entry.getTotalCalories();
+        entry.getFood().getNutrientsPerServing().addScaledTo(nutrientSums, sign * entry.getServings());
+        totalNutrients = null;
+    }
+    
+    /**
+     * Rebuilds the totals from the entries, for when a logged composite's
+     * recipe has changed
+     */
+    void recomputeTotals() {
+        totalCalories = 0;
+        nutrientSums = NutrientVector.accumulator();
+        totalNutrients = null;
         for (FoodEntry entry : entries) {
-            total += entry.getTotalCalories();
+            addToTotals(entry, 1);
         }
-        return total;
     }
     
     public String toFileString() {
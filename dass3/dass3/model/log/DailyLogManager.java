@@ -2,34 +2,280 @@
 // File: model/log/DailyLogManager.java
 package yada.model.log;
 
+import yada.model.food.CompositeFood;
+import yada.model.food.Food;
+import yada.model.food.RecipeListener;
+
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
- * Manages daily logs across multiple dates
+ * Manages daily logs across multiple dates, kept in date order.
+ *
+ * Listens to every logged composite, so when one changes recipe only the
+ * logs using it, and their weeks, months and days in the range indexes, are
+ * brought up to date.
  */
-public class DailyLogManager {
-    private Map<LocalDate, DailyLog> logs;
+public class DailyLogManager implements RecipeListener {
+    private NavigableMap<LocalDate, DailyLog> logs;
+    // Food name -> dates whose logs use it, with the number of entries on each date
+    private Map<String, NavigableMap<LocalDate, Integer>> datesUsing;
+    private Map<CompositeFood, Integer> watchedComposites; // Logged composite -> entries using it
+    private Set<LocalDate> dirtyDates; // Dates whose logs were added, replaced or changed since the last save
+    private CalorieRollups rollups; // Built on first use, then kept up to date; null until then
+    private DayTotalsTree dayTotals; // Built on first range query, then kept up to date; null until then
     
     public DailyLogManager() {
-        logs = new HashMap<>();
+        logs = new TreeMap<>();
+        datesUsing = new HashMap<>();
+        watchedComposites = new IdentityHashMap<>();
+        dirtyDates = new TreeSet<>();
     }
     
     public DailyLog getOrCreateLog(LocalDate date) {
         if (!logs.containsKey(date)) {
-            logs.put(date, new DailyLog(date));
+            addLog(new DailyLog(date));
         }
         return logs.get(date);
     }
     
+    /**
+     * Returns the log for the given date, or null if there is none
+     */
+    public DailyLog getLog(LocalDate date) {
+        return logs.get(date);
+    }
+    
+    /**
+     * Returns every log, oldest first
+     */
     public List<DailyLog> getAllLogs() {
         return new ArrayList<>(logs.values());
     }
     
+    /**
+     * Returns the logs dated from one date to another (both inclusive), oldest
+     * first
+     */
+    public List<DailyLog> range(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(logs.subMap(from, true, to, true).values());
+    }
+    
+    /**
+     * Returns the log for the latest date on or before the given date, or
+     * null if there is none
+     */
+    public DailyLog floor(LocalDate date) {
+        Map.Entry<LocalDate, DailyLog> entry = logs.floorEntry(date);
+        return entry == null ? null : entry.getValue();
+    }
+    
+    /**
+     * Returns the log for the earliest date on or after the given date, or
+     * null if there is none
+     */
+    public DailyLog ceiling(LocalDate date) {
+        Map.Entry<LocalDate, DailyLog> entry = logs.ceilingEntry(date);
+        return entry == null ? null : entry.getValue();
+    }
+    
+    /**
+     * Returns the dates, oldest first, whose logs were added, replaced or
+     * changed since the last call, and starts tracking afresh
+     */
+    public Set<LocalDate> takeDirtyDates() {
+        Set<LocalDate> dates = dirtyDates;
+        dirtyDates = new TreeSet<>();
+        return dates;
+    }
+    
     public void addLog(DailyLog log) {
-        logs.put(log.getDate(), log);
+        dirtyDates.add(log.getDate());
+        DailyLog oldLog = logs.put(log.getDate(), log);
+        if (oldLog != null && oldLog != log) {
+            oldLog.setManager(null);
+            for (FoodEntry entry : oldLog.getEntries()) {
+                entryRemoved(oldLog, entry);
+            }
+        }
+        if (oldLog != log) {
+            log.setManager(this);
+            for (FoodEntry entry : log.getEntries()) {
+                entryAdded(log, entry);
+            }
+        }
+    }
+    
+    /**
+     * Returns calories per week, month and year. They are built from the
+     * logs on first use and updated as entries come and go from then on.
+     */
+    public CalorieRollups getRollups() {
+        if (rollups == null) {
+            rollups = new CalorieRollups();
+            for (DailyLog log : logs.values()) {
+                rollups.add(log.getDate(), log.getTotalCalories());
+            }
+        }
+        return rollups;
+    }
+    
+    /**
+     * Installs previously saved rollups, which must match the current logs,
+     * so they need not be rebuilt from the logs
+     */
+    public void restoreRollups(CalorieRollups saved) {
+        rollups = saved;
+    }
+    
+    /**
+     * Returns the calories logged from one date to another (both inclusive)
+     */
+    public long getTotalCalories(LocalDate from, LocalDate to) {
+        return getDayTotals().sum(from.toEpochDay(), to.toEpochDay());
+    }
+    
+    /**
+     * Returns the number of days from one date to another (both inclusive)
+     * with at least one log entry
+     */
+    public int getLoggedDayCount(LocalDate from, LocalDate to) {
+        return getDayTotals().count(from.toEpochDay(), to.toEpochDay());
+    }
+    
+    /**
+     * Returns the average calories per logged day from one date to another
+     * (both inclusive), or 0 if none of those days has entries
+     */
+    public double getAverageCalories(LocalDate from, LocalDate to) {
+        int days = getLoggedDayCount(from, to);
+        return days == 0 ? 0 : (double) getTotalCalories(from, to) / days;
+    }
+    
+    /**
+     * Returns the highest daily total from one date to another (both
+     * inclusive), or 0 if none of those days has entries
+     */
+    public int getMaxDailyCalories(LocalDate from, LocalDate to) {
+        int max = getDayTotals().max(from.toEpochDay(), to.toEpochDay());
+        return max == DayTotalsTree.NONE ? 0 : max;
+    }
+    
+    private DayTotalsTree getDayTotals() {
+        if (dayTotals == null) {
+            dayTotals = new DayTotalsTree();
+            for (LocalDate date : logs.keySet()) {
+                updateDayTotal(date);
+            }
+        }
+        return dayTotals;
+    }
+    
+    // Copies the current total of the log held for the date into dayTotals
+    private void updateDayTotal(LocalDate date) {
+        DailyLog log = logs.get(date);
+        boolean logged = log != null && log.getEntryCount() > 0;
+        dayTotals.set(date.toEpochDay(), logged ? log.getTotalCalories() : 0, logged);
+    }
+    
+    /**
+     * Returns the dates, oldest first, whose logs contain the given food
+     */
+    public List<LocalDate> getDatesUsing(String foodName) {
+        NavigableMap<LocalDate, Integer> dates = datesUsing.get(foodName);
+        return dates == null ? new ArrayList<>() : new ArrayList<>(dates.keySet());
+    }
+    
+    void entryAdded(DailyLog log, FoodEntry entry) {
+        dirtyDates.add(log.getDate());
+        if (rollups != null) {
+            rollups.add(log.getDate(), entry.getTotalCalories());
+        }
+        if (dayTotals != null) {
+            updateDayTotal(log.getDate());
+        }
+        datesUsing.computeIfAbsent(entry.getFood().getName(), n -> new TreeMap<>())
+                  .merge(log.getDate(), 1, Integer::sum);
+        
+        Food food = entry.getFood();
+        if (food instanceof CompositeFood && watchedComposites.merge((CompositeFood) food, 1, Integer::sum) == 1) {
+            ((CompositeFood) food).addRecipeListener(this);
+        }
+    }
+    
+    void entryRemoved(DailyLog log, FoodEntry entry) {
+        dirtyDates.add(log.getDate());
+        if (rollups != null) {
+            rollups.add(log.getDate(), -entry.getTotalCalories());
+        }
+        if (dayTotals != null) {
+            updateDayTotal(log.getDate());
+        }
+        
+        Food food = entry.getFood();
+        if (food instanceof CompositeFood) {
+            CompositeFood composite = (CompositeFood) food;
+            Integer uses = watchedComposites.get(composite);
+            if (uses != null && uses > 1) {
+                watchedComposites.put(composite, uses - 1);
+            } else if (uses != null) {
+                watchedComposites.remove(composite);
+                composite.removeRecipeListener(this);
+            }
+        }
+        
+        String foodName = entry.getFood().getName();
+        NavigableMap<LocalDate, Integer> dates = datesUsing.get(foodName);
+        if (dates == null) {
+            return;
+        }
+        
+        Integer count = dates.get(log.getDate());
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            dates.put(log.getDate(), count - 1);
+        } else {
+            dates.remove(log.getDate());
+            if (dates.isEmpty()) {
+                datesUsing.remove(foodName);
+            }
+        }
+    }
+    
+    /**
+     * Recomputes the logs using a composite whose recipe changed, moving
+     * their weeks, months and days in the range indexes by the difference
+     */
+    @Override
+    public void recipeChanged(CompositeFood composite) {
+        NavigableMap<LocalDate, Integer> dates = datesUsing.get(composite.getName());
+        if (dates == null) {
+            return;
+        }
+        
+        for (LocalDate date : dates.keySet()) {
+            DailyLog log = logs.get(date);
+            int oldCalories = log.getTotalCalories();
+            log.recomputeTotals();
+            if (rollups != null) {
+                rollups.add(date, log.getTotalCalories() - oldCalories);
+            }
+            if (dayTotals != null) {
+                updateDayTotal(date);
+            }
+        }
     }
 }
@@ -0,0 +1,149 @@
+// File: model/log/DayTotalsTree.java
+package yada.model.log;
+
+import java.util.Arrays;
+
+/**
+ * Segment tree over epoch days holding each day's calorie total, answering
+ * sum, max and logged-day count over any date range in O(log n).
+ *
+ * The tree covers a power-of-two span of days and doubles whenever a day
+ * outside it is set. Days that were never set count as unlogged.
+ */
+class DayTotalsTree {
+    static final int NONE = Integer.MIN_VALUE; // Max of a range with no logged days
+    
+    private long base; // Epoch day of the first leaf
+    private int capacity; // Number of leaves, a power of two (0 while empty)
+    private long[] sums; // Node -> calories summed over its days
+    private int[] maxes; // Node -> highest logged daily total under it, or NONE
+    private int[] counts; // Node -> number of logged days under it
+    
+    DayTotalsTree() {
+        sums = new long[0];
+        maxes = new int[0];
+        counts = new int[0];
+    }
+    
+    /**
+     * Records a day's total; an unlogged day counts for nothing in any query
+     */
+    void set(long epochDay, int calories, boolean logged) {
+        if (!logged && !covers(epochDay)) {
+            return;
+        }
+        ensureCovers(epochDay);
+        
+        int node = capacity + (int) (epochDay - base);
+        sums[node] = logged ? calories : 0;
+        maxes[node] = logged ? calories : NONE;
+        counts[node] = logged ? 1 : 0;
+        for (node >>= 1; node > 0; node >>= 1) {
+            pull(node);
+        }
+    }
+    
+    long sum(long from, long to) {
+        long total = 0;
+        for (int lo = firstLeaf(from), hi = endLeaf(to); lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                total += sums[lo++];
+            }
+            if ((hi & 1) == 1) {
+                total += sums[--hi];
+            }
+        }
+        return total;
+    }
+    
+    int max(long from, long to) {
+        int max = NONE;
+        for (int lo = firstLeaf(from), hi = endLeaf(to); lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                max = Math.max(max, maxes[lo++]);
+            }
+            if ((hi & 1) == 1) {
+                max = Math.max(max, maxes[--hi]);
+            }
+        }
+        return max;
+    }
+    
+    int count(long from, long to) {
+        int count = 0;
+        for (int lo = firstLeaf(from), hi = endLeaf(to); lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) {
+                count += counts[lo++];
+            }
+            if ((hi & 1) == 1) {
+                count += counts[--hi];
+            }
+        }
+        return count;
+    }
+    
+    private boolean covers(long epochDay) {
+        return epochDay >= base && epochDay - base < capacity;
+    }
+    
+    // Leaf node of the first covered day on or after the given day
+    private int firstLeaf(long from) {
+        return capacity + (int) Math.min(Math.max(from - base, 0), capacity);
+    }
+    
+    // Leaf node just past the last covered day on or before the given day
+    private int endLeaf(long to) {
+        return capacity + (int) Math.min(Math.max(to - base + 1, 0), capacity);
+    }
+    
+    private void pull(int node) {
+        sums[node] = sums[2 * node] + sums[2 * node + 1];
+        maxes[node] = Math.max(maxes[2 * node], maxes[2 * node + 1]);
+        counts[node] = counts[2 * node] + counts[2 * node + 1];
+    }
+    
+    private void ensureCovers(long epochDay) {
+        if (covers(epochDay)) {
+            return;
+        }
+        if (capacity == 0) {
+            resize(epochDay, 1);
+            return;
+        }
+        
+        // Grow towards the new day, keeping the far end of the current span
+        long end = base + capacity;
+        long span = epochDay < base ? end - epochDay : epochDay - base + 1;
+        int newCapacity = capacity;
+        while (newCapacity < span) {
+            if (newCapacity > Integer.MAX_VALUE / 4) {
+                throw new IllegalArgumentException("Date range too wide: epoch day " + epochDay);
+            }
+            newCapacity *= 2;
+        }
+        resize(epochDay < base ? end - newCapacity : base, newCapacity);
+    }
+    
+    private void resize(long newBase, int newCapacity) {
+        long[] newSums = new long[2 * newCapacity];
+        int[] newMaxes = new int[2 * newCapacity];
+        int[] newCounts = new int[2 * newCapacity];
+        Arrays.fill(newMaxes, NONE);
+        
+        int offset = (int) (base - newBase);
+        for (int i = 0; i < capacity; i++) {
+            newSums[newCapacity + offset + i] = sums[capacity + i];
+            newMaxes[newCapacity + offset + i] = maxes[capacity + i];
+            newCounts[newCapacity + offset + i] = counts[capacity + i];
+        }
+        
+        base = newBase;
+        capacity = newCapacity;
+        sums = newSums;
+        maxes = newMaxes;
+        counts = newCounts;
+        for (int node = capacity - 1; node > 0; node--) {
+            pull(node);
+        }
+    }
+}
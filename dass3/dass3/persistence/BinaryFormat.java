@@ -0,0 +1,171 @@
+// File: persistence/BinaryFormat.java
+package yada.persistence;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared pieces of the binary food and log files, used instead of the text
+ * format when the file name ends in ".bin".
+ *
+ * Each file starts with a four-byte magic and a version byte, followed by a
+ * string table (every name and keyword stored once, UTF-8) and then the
+ * records, which refer to strings by their index in the table. All counts,
+ * ids and numbers are varints; signed numbers are zigzag-encoded first.
+ */
+final class BinaryFormat {
+    static final byte[] FOODS_MAGIC = {'Y', 'A', 'D', 'F'};
+    static final byte[] LOGS_MAGIC = {'Y', 'A', 'D', 'L'};
+    static final int VERSION = 1;
+    
+    private BinaryFormat() {
+    }
+    
+    /**
+     * Returns true if new files with this name should be written in binary
+     */
+    static boolean isBinaryName(String filename) {
+        return filename.endsWith(".bin");
+    }
+    
+    /**
+     * Returns true if a file that is not in the binary format should still be
+     * saved in it: only when it is missing or empty and its name selects
+     * binary. An existing text file stays text whatever its name.
+     */
+    static boolean isNewBinaryFile(String filename) {
+        return isBinaryName(filename) && new File(filename).length() == 0;
+    }
+    
+    /**
+     * Returns true if the file exists and starts with the given magic
+     */
+    static boolean hasMagic(String filename, byte[] magic) {
+        try (InputStream in = new FileInputStream(filename)) {
+            byte[] start = new byte[magic.length];
+            return in.readNBytes(start, 0, start.length) == start.length && Arrays.equals(start, magic);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Reads the whole file into memory, so available() on the returned
+     * stream is exactly the number of bytes left
+     */
+    static DataInputStream open(String filename) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(Paths.get(filename))));
+    }
+    
+    static void writeHeader(DataOutput out, byte[] magic) throws IOException {
+        out.write(magic);
+        out.writeByte(VERSION);
+    }
+    
+    static void readHeader(DataInput in, byte[] magic) throws IOException {
+        byte[] start = new byte[magic.length];
+        in.readFully(start);
+        if (!Arrays.equals(start, magic)) {
+            throw new IOException("Not a YADA binary file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary file version " + version);
+        }
+    }
+    
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    /**
+     * Reads a length that must fit in the bytes left, so corrupt input fails
+     * with an IOException rather than a negative or huge allocation
+     */
+    static int readLength(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Length " + length + " exceeds the remaining " + in.available() + " bytes");
+        }
+        return length;
+    }
+    
+    static void writeSignedVarint(DataOutput out, int value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+    
+    static int readSignedVarint(DataInput in) throws IOException {
+        int value = readVarint(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    /**
+     * Collects strings before writing, handing out the index each is stored at
+     */
+    static class StringTableWriter {
+        private Map<String, Integer> ids = new HashMap<>();
+        private List<String> strings = new ArrayList<>();
+        
+        int idOf(String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = strings.size();
+                ids.put(string, id);
+                strings.add(string);
+            }
+            return id;
+        }
+        
+        void writeTo(DataOutput out) throws IOException {
+            writeVarint(out, strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+    
+    // Every string takes at least the byte holding its length, so the count
+    // is bounded by the bytes left as well
+    static String[] readStringTable(DataInputStream in) throws IOException {
+        String[] strings = new String[readLength(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readLength(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+    
+    static String readString(DataInput in, String[] strings) throws IOException {
+        int id = readVarint(in);
+        if (id < 0 || id >= strings.length) {
+            throw new IOException("String id " + id + " out of range");
+        }
+        return strings[id];
+    }
+}
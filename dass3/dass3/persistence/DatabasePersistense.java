@@ -6,102 +6,300 @@ import yada.model.food.BasicFood;
 import yada.model.food.CompositeFood;
 import yada.model.food.Food;
 import yada.model.food.FoodDatabase;
+import yada.model.food.FoodSnapshot;
+import yada.model.food.Nutrient;
+import yada.model.food.NutrientVector;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Handles persistence for the food database
+ * Handles persistence for the food database.
+ *
+ * Saves append a line for each food that changed, or an "X|name" line for
+ * one that was removed; a later line for a name replaces any earlier one when
+ * loading. The file is rewritten in full once stale lines would outnumber the
+ * live ones.
+ *
+ * The binary format (see BinaryFormat) is always rewritten in full. Either
+ * format is recognized when loading, and saves keep the format the file was
+ * loaded in; a file name ending in ".bin" selects binary for a new file.
  */
 public class DatabasePersistence {
+    private static final int BASIC = 0; // Binary record types
+    private static final int COMPOSITE = 1;
+    
     private String filename;
+    private boolean binary; // Write the binary format rather than text
+    private boolean fileInSync; // True if the file plus unsaved changes gives the current foods
+    private int fileRecordCount; // Lines in the file, live or stale
     
     public DatabasePersistence(String filename) {
         this.filename = filename;
+        this.binary = BinaryFormat.isBinaryName(filename);
     }
     
     public FoodDatabase loadDatabase() {
         FoodDatabase database = new FoodDatabase();
+        fileInSync = false;
+        fileRecordCount = 0;
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
+        // Saves go on in the format found here, as an incremental text save
+        // appended to a binary file would corrupt it
+        binary = BinaryFormat.hasMagic(filename, BinaryFormat.FOODS_MAGIC);
+        if (binary) {
+            loadBinaryDatabase(database);
+            return database;
+        }
+        binary = BinaryFormat.isNewBinaryFile(filename);
+        
+        try {
+            TextBuffer text = TextBuffer.read(filename);
+            FoodLineParser parser = new FoodLineParser();
+            
+            // Foods are collected and added in one batch once every line has
+            // been read, so a later line for a name simply replaces the
+            // earlier one and composites can be linked in dependency order
+            Map<String, Food> basics = new LinkedHashMap<>();
+            Map<String, CompositeSpec> composites = new LinkedHashMap<>();
+            boolean clean = text.endsWithLineBreak(); // False if any line is cut short or unreadable
+            while (text.nextLine()) {
+                fileRecordCount++;
+                try {
+                    if (parser.parse(text, basics, composites) == '\0') {
+                        clean = false;
+                    }
+                } catch (RuntimeException e) {
+                    clean = false;
+                    System.err.println("Error parsing food entry '" + text.line() + "': " + e.getMessage());
                 }
-                
-                String[] parts = line.split("\\|");
-                if (parts.length < 3) {
-                    continue;
+            }
+            
+            database.addFoods(basics.values());
+            linkComposites(composites, database);
+            database.takeDirtyFoodNames();
+            // Lines appended after a damaged one could be lost with it, so
+            // the next save rewrites the whole file instead
+            fileInSync = clean;
+        } catch (FileNotFoundException e) {
+            // Create initial database with sample foods
+            createInitialDatabase(database);
+        } catch (IOException e) {
+            System.err.println("Error reading database: " + e.getMessage());
+        }
+        
+        return database;
+    }
+    
+    private void loadBinaryDatabase(FoodDatabase database) {
+        try (DataInputStream in = BinaryFormat.open(filename)) {
+            BinaryFormat.readHeader(in, BinaryFormat.FOODS_MAGIC);
+            String[] strings = BinaryFormat.readStringTable(in);
+            
+            List<Food> basics = new ArrayList<>();
+            Map<String, CompositeSpec> composites = new LinkedHashMap<>();
+            int count = BinaryFormat.readVarint(in);
+            for (int i = 0; i < count; i++) {
+                int type = in.readUnsignedByte();
+                String name = BinaryFormat.readString(in, strings);
+                List<String> keywords = new ArrayList<>();
+                for (int k = BinaryFormat.readVarint(in); k > 0; k--) {
+                    keywords.add(BinaryFormat.readString(in, strings));
                 }
                 
-                String type = parts[0];
-                String name = parts[1];
-                List<String> keywords = Arrays.asList(parts[2].split(","));
-                
-                if (type.equals("B") && parts.length >= 4) {
-                    // Basic food
-                    int calories = Integer.parseInt(parts[3]);
-                    BasicFood food = new BasicFood(name, keywords, calories);
-                    database.addFood(food);
-                } else if (type.equals("C") && parts.length >= 4) {
-                    // Composite food - need to handle this in a second pass
-                    // since we need all basic foods loaded first
-                    CompositeFood food = new CompositeFood(name, keywords);
-                    
-                    // For now, just add the empty composite food
-                    database.addFood(food);
+                if (type == BASIC) {
+                    int calories = BinaryFormat.readSignedVarint(in);
+                    double[] nutrients = NutrientVector.accumulator();
+                    for (int n = BinaryFormat.readVarint(in); n > 0; n--) {
+                        int ordinal = BinaryFormat.readVarint(in);
+                        double amount = in.readDouble();
+                        if (ordinal >= 0 && ordinal < nutrients.length) {
+                            nutrients[ordinal] = amount;
+                        }
+                    }
+                    basics.add(new BasicFood(name, keywords, calories, NutrientVector.of(nutrients)));
+                } else if (type == COMPOSITE) {
+                    CompositeSpec spec = new CompositeSpec(name, keywords);
+                    for (int c = BinaryFormat.readVarint(in); c > 0; c--) {
+                        spec.componentNames.add(BinaryFormat.readString(in, strings));
+                        spec.servings.add(BinaryFormat.readSignedVarint(in));
+                    }
+                    composites.put(name, spec);
+                } else {
+                    throw new IOException("Unknown food record type " + type);
                 }
             }
             
-            // Second pass for composite foods to link components
-            reader.close();
-            BufferedReader secondReader = new BufferedReader(new FileReader(filename));
-            while ((line = secondReader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
+            database.addFoods(basics);
+            linkComposites(composites, database);
+            database.takeDirtyFoodNames();
+            fileRecordCount = count;
+            fileInSync = true;
+        } catch (IOException e) {
+            System.err.println("Error reading database: " + e.getMessage());
+        }
+    }
+    
+    // Reads the ';'-separated amounts written by NutrientVector.toFileString
+    private static NutrientVector parseNutrients(TextBuffer text, int from, int to) {
+        double[] values = NutrientVector.accumulator();
+        int i = 0;
+        for (int start = from; start < to && i < values.length; start++, i++) {
+            int end = text.find(';', start, to);
+            if (end > start) {
+                values[i] = Double.parseDouble(text.string(start, end));
+            }
+            start = end;
+        }
+        return NutrientVector.of(values);
+    }
+    
+    /**
+     * Parses food lines: "B|name|keywords|calories[|nutrients]",
+     * "C|name|keywords|component:servings,..." or "X|name" for a removed
+     * food. Shared by the loader and the journal.
+     */
+    static final class FoodLineParser {
+        private final int[] fields = new int[10]; // Offsets of up to five '|' fields
+        private final int[] detail = new int[6]; // Offsets of a component's name and servings
+        
+        /**
+         * Parses the text's current line into the basic foods or composites
+         * collected so far, replacing or removing any earlier food of that
+         * name. Returns the line's type, 'B', 'C' or 'X', or 0 if the line
+         * is not a food and was ignored.
+         */
+        char parse(TextBuffer text, Map<String, Food> basics, Map<String, CompositeSpec> composites) {
+            int parts = text.split(text.lineStart(), text.lineEnd(), '|', fields);
+            char type = fields[1] - fields[0] == 1 ? text.charAt(fields[0]) : '\0';
+            
+            if (parts == 2 && type == 'X') {
+                String name = text.string(fields[2], fields[3]);
+                basics.remove(name);
+                composites.remove(name);
+                return type;
+            }
+            if (parts < 4) {
+                return '\0';
+            }
+            
+            if (type == 'B') {
+                String name = text.string(fields[2], fields[3]);
+                List<String> keywords = text.strings(fields[4], fields[5], ',');
+                int calories = text.parseInt(fields[6], fields[7]);
+                NutrientVector nutrients = parts >= 5 ? parseNutrients(text, fields[8], fields[9]) : NutrientVector.ZERO;
+                basics.put(name, new BasicFood(name, keywords, calories, nutrients));
+                composites.remove(name);
+                return type;
+            }
+            if (type == 'C') {
+                String name = text.string(fields[2], fields[3]);
+                CompositeSpec spec = new CompositeSpec(name, text.strings(fields[4], fields[5], ','));
+                int end = fields[7];
+                for (int start = fields[6]; start < end; start++) {
+                    int componentEnd = text.find(',', start, end);
+                    if (text.split(start, componentEnd, ':', detail) == 2) {
+                        spec.componentNames.add(text.string(detail[0], detail[1]));
+                        spec.servings.add(text.parseInt(detail[2], detail[3]));
+                    }
+                    start = componentEnd;
                 }
-                
-                String[] parts = line.split("\\|");
-                if (parts.length < 4) {
+                basics.remove(name);
+                composites.put(name, spec);
+                return type;
+            }
+            return '\0';
+        }
+    }
+    
+    /**
+     * Adds or replaces the food on a single "B|..." or "C|..." line, linking
+     * a composite's components to the foods of those names in the database
+     *
+     * @throws IllegalArgumentException if the line is not a food
+     */
+    static void addFoodLine(String line, FoodDatabase database) {
+        TextBuffer text = TextBuffer.of(line);
+        Map<String, Food> basics = new LinkedHashMap<>();
+        Map<String, CompositeSpec> composites = new LinkedHashMap<>();
+        char type = text.nextLine() ? new FoodLineParser().parse(text, basics, composites) : '\0';
+        if (type != 'B' && type != 'C') {
+            throw new IllegalArgumentException("not a food");
+        }
+        
+        for (Food food : basics.values()) {
+            database.addFood(food);
+        }
+        linkComposites(composites, database);
+    }
+    
+    /**
+     * Builds the composites in dependency order, so every composite is linked
+     * to fully built components and added to the database exactly once.
+     * Uses an iterative depth-first search: a component that is still on the
+     * search path would close a cycle, so that reference is dropped with a
+     * warning instead of being linked. Components that are not among the
+     * composites are looked up in the database. The composites are added to
+     * the database together at the end.
+     */
+    private static void linkComposites(Map<String, CompositeSpec> composites, FoodDatabase database) {
+        Map<String, Food> built = new LinkedHashMap<>();
+        for (CompositeSpec root : composites.values()) {
+            if (root.state != CompositeSpec.UNVISITED) {
+                continue;
+            }
+            
+            Deque<CompositeSpec> path = new ArrayDeque<>();
+            root.state = CompositeSpec.IN_PROGRESS;
+            path.push(root);
+            
+            while (!path.isEmpty()) {
+                CompositeSpec spec = path.peek();
+                if (spec.nextComponent < spec.componentNames.size()) {
+                    CompositeSpec child = composites.get(spec.componentNames.get(spec.nextComponent++));
+                    if (child == null) {
+                        continue;
+                    }
+                    if (child.state == CompositeSpec.IN_PROGRESS) {
+                        System.err.println("Ignoring cyclic component " + child.name + " of " + spec.name);
+                        spec.cyclic.add(spec.nextComponent - 1);
+                    } else if (child.state == CompositeSpec.UNVISITED) {
+                        child.state = CompositeSpec.IN_PROGRESS;
+                        path.push(child);
+                    }
                     continue;
                 }
                 
-                String type = parts[0];
-                String name = parts[1];
-                
-                if (type.equals("C")) {
-                    String[] componentParts = parts[3].split(",");
-                    CompositeFood compositeFood = (CompositeFood) database.getFood(name);
-                    
-                    if (compositeFood != null) {
-                        for (String componentPart : componentParts) {
-                            String[] compDetail = componentPart.split(":");
-                            if (compDetail.length == 2) {
-                                String foodName = compDetail[0];
-                                int servings = Integer.parseInt(compDetail[1]);
-                                
-                                Food component = database.getFood(foodName);
-                                if (component != null) {
-                                    compositeFood.addComponent(component, servings);
-                                }
-                            }
-                        }
+                // All components are built: link them and publish this composite
+                path.pop();
+                CompositeFood food = new CompositeFood(spec.name, spec.keywords);
+                for (int i = 0; i < spec.componentNames.size(); i++) {
+                    String componentName = spec.componentNames.get(i);
+                    Food component = built.get(componentName);
+                    if (component == null) {
+                        component = database.getFood(componentName);
+                    }
+                    if (component != null && !spec.cyclic.contains(i)) {
+                        food.addComponent(component, spec.servings.get(i));
                     }
                 }
+                built.put(spec.name, food);
+                spec.state = CompositeSpec.DONE;
             }
-            secondReader.close();
-            
-        } catch (FileNotFoundException e) {
-            // Create initial database with sample foods
-            createInitialDatabase(database);
-        } catch (IOException e) {
-            System.err.println("Error reading database: " + e.getMessage());
         }
         
-        return database;
+        if (!built.isEmpty()) {
+            database.addFoods(built.values());
+        }
     }
     
     private void createInitialDatabase(FoodDatabase database) {
@@ -135,14 +333,127 @@ public class DatabasePersistence {
         saveDatabase(database);
     }
     
+    /**
+     * Saves the foods changed since the last save by appending their lines,
+     * or rewrites the whole file when that is due
+     */
     public void saveDatabase(FoodDatabase database) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (Food food : database.getAllFoods()) {
-                writer.write(food.toFileString());
-                writer.newLine();
+        // Write a point-in-time snapshot so foods added or removed while
+        // saving neither block nor end up half-written
+        Set<String> dirtyNames = database.takeDirtyFoodNames();
+        FoodSnapshot snapshot = database.snapshot();
+        if (fileInSync && dirtyNames.isEmpty()) {
+            return;
+        }
+        if (binary) {
+            saveBinaryDatabase(snapshot);
+            return;
+        }
+        boolean rewrite = !fileInSync || fileRecordCount + dirtyNames.size() > 2 * snapshot.size();
+        
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8, !rewrite))) {
+            if (rewrite) {
+                for (Food food : snapshot.getAllFoods()) {
+                    writer.write(food.toFileString());
+                    writer.newLine();
+                }
+                fileRecordCount = snapshot.size();
+            } else {
+                for (String name : dirtyNames) {
+                    Food food = snapshot.getFood(name);
+                    writer.write(food != null ? food.toFileString() : "X|" + name);
+                    writer.newLine();
+                    fileRecordCount++;
+                }
             }
+            fileInSync = true;
         } catch (IOException e) {
+            // The file may now hold part of a save; rewrite it all next time
+            fileInSync = false;
             System.err.println("Error saving database: " + e.getMessage());
         }
     }
+    
+    private void saveBinaryDatabase(FoodSnapshot snapshot) {
+        List<Food> foods = snapshot.getAllFoods();
+        
+        try {
+            // Records go first into memory, as they decide what the string
+            // table written ahead of them has to hold
+            BinaryFormat.StringTableWriter strings = new BinaryFormat.StringTableWriter();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(records);
+            BinaryFormat.writeVarint(out, foods.size());
+            for (Food food : foods) {
+                writeBinaryFood(out, food, strings);
+            }
+            
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+                BinaryFormat.writeHeader(file, BinaryFormat.FOODS_MAGIC);
+                strings.writeTo(file);
+                records.writeTo(file);
+            }
+            fileRecordCount = foods.size();
+            fileInSync = true;
+        } catch (IOException e) {
+            fileInSync = false;
+            System.err.println("Error saving database: " + e.getMessage());
+        }
+    }
+    
+    private void writeBinaryFood(DataOutputStream out, Food food, BinaryFormat.StringTableWriter strings) throws IOException {
+        out.writeByte(food instanceof CompositeFood ? COMPOSITE : BASIC);
+        BinaryFormat.writeVarint(out, strings.idOf(food.getName()));
+        List<String> keywords = food.getKeywords();
+        BinaryFormat.writeVarint(out, keywords.size());
+        for (String keyword : keywords) {
+            BinaryFormat.writeVarint(out, strings.idOf(keyword));
+        }
+        
+        if (food instanceof CompositeFood) {
+            Map<Food, Integer> components = ((CompositeFood) food).getComponents();
+            BinaryFormat.writeVarint(out, components.size());
+            for (Map.Entry<Food, Integer> component : components.entrySet()) {
+                BinaryFormat.writeVarint(out, strings.idOf(component.getKey().getName()));
+                BinaryFormat.writeSignedVarint(out, component.getValue());
+            }
+        } else {
+            BinaryFormat.writeSignedVarint(out, food.getCaloriesPerServing());
+            NutrientVector nutrients = food.getNutrientsPerServing();
+            int nonZero = 0;
+            for (Nutrient nutrient : Nutrient.values()) {
+                if (nutrients.get(nutrient) != 0) {
+                    nonZero++;
+                }
+            }
+            BinaryFormat.writeVarint(out, nonZero);
+            for (Nutrient nutrient : Nutrient.values()) {
+                double amount = nutrients.get(nutrient);
+                if (amount != 0) {
+                    BinaryFormat.writeVarint(out, nutrient.ordinal());
+                    out.writeDouble(amount);
+                }
+            }
+        }
+    }
+    
+    // A composite read from the file, waiting to be linked
+    private static class CompositeSpec {
+        static final int UNVISITED = 0;
+        static final int IN_PROGRESS = 1;
+        static final int DONE = 2;
+        
+        private final String name;
+        private final List<String> keywords;
+        private final List<String> componentNames = new ArrayList<>();
+        private final List<Integer> servings = new ArrayList<>();
+        private final Set<Integer> cyclic = new HashSet<>(); // Indexes of dropped components
+        private int nextComponent;
+        private int state = UNVISITED;
+        
+        CompositeSpec(String name, List<String> keywords) {
+            this.name = name;
+            this.keywords = keywords;
+        }
+    }
 }
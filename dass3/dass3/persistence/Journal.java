@@ -0,0 +1,197 @@
+// File: persistence/Journal.java
+package yada.persistence;
+
+import yada.model.DietProfile;
+import yada.model.food.Food;
+import yada.model.food.FoodDatabase;
+import yada.model.log.DailyLog;
+import yada.model.log.DailyLogManager;
+import yada.util.CommandJournal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only journal of the changes made since the data files were last
+ * saved. Each executed or undone command adds one line; on startup the
+ * lines are replayed over the loaded files, and a checkpoint (saving every
+ * file) empties the journal again.
+ *
+ * Records are "TYPE|payload", where the payload reuses the data file formats:
+ * FOOD|food line, UNFOOD|name, LOG|date|name:servings,...,
+ * PROFILE|gender|height|age|weight|activity|method
+ *
+ * Every record carries the resulting state rather than a delta, so replaying
+ * one over files that already hold it changes nothing. That covers a crash
+ * after a checkpoint has saved the files but before it emptied the journal.
+ * Each record is forced to disk before append returns.
+ */
+public class Journal implements CommandJournal {
+    private static final String FOOD = "FOOD";
+    private static final String UNFOOD = "UNFOOD";
+    private static final String LOG = "LOG";
+    private static final String PROFILE = "PROFILE";
+    
+    private String filename;
+    private FileChannel channel; // Open for appending from the first write until close
+    private int checkpointInterval; // Records to collect before checkpointing
+    private int recordCount; // Records currently in the file
+    private Runnable checkpointAction; // Saves every data file, then calls clear
+    
+    public Journal(String filename, int checkpointInterval) {
+        this.filename = filename;
+        this.checkpointInterval = checkpointInterval;
+    }
+    
+    public void setCheckpointAction(Runnable checkpointAction) {
+        this.checkpointAction = checkpointAction;
+    }
+    
+    public static String foodAdded(Food food) {
+        return FOOD + "|" + food.toFileString();
+    }
+    
+    public static String foodRemoved(String name) {
+        return UNFOOD + "|" + name;
+    }
+    
+    public static String logChanged(DailyLog log) {
+        return LOG + "|" + log.toFileString();
+    }
+    
+    public static String profileChanged(DietProfile profile) {
+        return PROFILE + "|" + profile.getGender() + "|" + profile.getHeight() + "|" + profile.getAge()
+               + "|" + profile.getWeight() + "|" + profile.getActivityLevel() + "|" + profile.getCalculationMethod();
+    }
+    
+    /**
+     * Appends one record and forces it to disk, checkpointing once the
+     * journal has grown past the interval
+     */
+    @Override
+    public void append(String record) {
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap((record + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            FileChannel out = getChannel();
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            out.force(false);
+        } catch (IOException e) {
+            System.err.println("Error writing journal: " + e.getMessage());
+            return;
+        }
+        
+        recordCount++;
+        if (recordCount >= checkpointInterval && checkpointAction != null) {
+            checkpointAction.run();
+        }
+    }
+    
+    /**
+     * Empties the journal; called once every data file has been saved
+     */
+    public void clear() {
+        try {
+            FileChannel out = getChannel();
+            out.truncate(0);
+            out.force(false);
+            recordCount = 0;
+        } catch (IOException e) {
+            System.err.println("Error clearing journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Closes the journal file; a later append opens it again
+     */
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        }
+        channel = null;
+    }
+    
+    private FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+    
+    /**
+     * Applies the journaled changes, oldest first, over the data loaded from
+     * the last saved files
+     */
+    public void replay(FoodDatabase foodDatabase, DailyLogManager logManager, DietProfile profile) {
+        recordCount = 0;
+        
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                
+                recordCount++;
+                try {
+                    apply(line, foodDatabase, logManager, profile);
+                } catch (Exception e) {
+                    System.err.println("Error replaying journal record '" + line + "': " + e.getMessage());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing changed since the last save
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+    }
+    
+    private void apply(String record, FoodDatabase foodDatabase, DailyLogManager logManager, DietProfile profile) {
+        int separator = record.indexOf('|');
+        String type = record.substring(0, separator);
+        String payload = record.substring(separator + 1);
+        
+        switch (type) {
+            case FOOD:
+                DatabasePersistence.addFoodLine(payload, foodDatabase);
+                break;
+            case UNFOOD:
+                foodDatabase.removeFood(payload);
+                break;
+            case LOG: {
+                TextBuffer text = TextBuffer.of(payload);
+                if (!text.nextLine()) {
+                    throw new IllegalArgumentException("empty log record");
+                }
+                // Replaces the whole day's log
+                logManager.addLog(new LogPersistence.LogLineParser(foodDatabase).parse(text));
+                break;
+            }
+            case PROFILE: {
+                String[] parts = payload.split("\\|");
+                profile.setGender(parts[0]);
+                profile.setHeight(Double.parseDouble(parts[1]));
+                profile.setAge(Integer.parseInt(parts[2]));
+                profile.setWeight(Double.parseDouble(parts[3]));
+                profile.setActivityLevel(Integer.parseInt(parts[4]));
+                profile.setCalculationMethod(Integer.parseInt(parts[5]));
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown record type");
+        }
+    }
+}
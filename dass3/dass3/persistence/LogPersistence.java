@@ -4,68 +4,299 @@ package yada.persistence;
 
 import yada.model.food.Food;
 import yada.model.food.FoodDatabase;
+import yada.model.log.CalorieRollups;
 import yada.model.log.DailyLog;
 import yada.model.log.DailyLogManager;
 import yada.model.log.FoodEntry;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Handles persistence for daily logs
+ * Handles persistence for daily logs, along with the calorie rollups saved
+ * next to them. The rollups are stamped with the length and modification
+ * time of the log file and of the foods file the logs are read against, and
+ * are only used while both files still match, so checking them costs two
+ * file lookups rather than a pass over the logs.
+ *
+ * Saves append a line for each date whose log changed; a later line for a
+ * date replaces any earlier one when loading. The file is rewritten in full
+ * once stale lines would outnumber the live ones.
+ *
+ * The binary format (see BinaryFormat) is always rewritten in full. Either
+ * format is recognized when loading, and saves keep the format the file was
+ * loaded in; a file name ending in ".bin" selects binary for a new file.
  */
 public class LogPersistence {
+    private static final long MIN_EPOCH_DAY = LocalDate.MIN.toEpochDay(); // Range of binary log dates
+    private static final long MAX_EPOCH_DAY = LocalDate.MAX.toEpochDay();
+    
     private String filename;
-    private FoodDatabase foodDatabase;
+    private String foodsFilename; // Null if unknown, and then saved rollups are not trusted
+    private String rollupsStamp; // Stamp of the saved rollups if they match the logs, else null
+    private boolean binary; // Write the binary format rather than text
+    private boolean fileInSync; // True if the file plus unsaved changes gives the current logs
+    private int fileRecordCount; // Lines in the file, live or stale
     
     public LogPersistence(String filename) {
+        this(filename, null);
+    }
+    
+    /**
+     * Creates persistence for logs whose entries name foods saved in the
+     * given foods file, which lets saved calorie rollups be reused
+     */
+    public LogPersistence(String filename, String foodsFilename) {
         this.filename = filename;
+        this.foodsFilename = foodsFilename;
+        this.binary = BinaryFormat.isBinaryName(filename);
     }
     
-    public DailyLogManager loadLogs() {
+    /**
+     * Reads the log file in a single pass, resolving each entry's food name
+     * against the database as the line is parsed. Entries naming foods that
+     * are no longer in the database are skipped with a warning.
+     */
+    public DailyLogManager loadLogs(FoodDatabase foodDatabase) {
         DailyLogManager logManager = new DailyLogManager();
+        boolean complete; // False once any entry is dropped, as the saved rollups then overcount
+        fileInSync = false;
+        fileRecordCount = 0;
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
+        // Saves go on in the format found here, as an incremental text save
+        // appended to a binary file would corrupt it
+        binary = BinaryFormat.hasMagic(filename, BinaryFormat.LOGS_MAGIC);
+        if (binary) {
+            complete = loadBinaryLogs(logManager, foodDatabase);
+        } else {
+            binary = BinaryFormat.isNewBinaryFile(filename);
+            complete = loadTextLogs(logManager, foodDatabase);
+        }
+        logManager.takeDirtyDates();
+        
+        CalorieRollups rollups = complete ? loadRollups() : null;
+        if (rollups != null) {
+            logManager.restoreRollups(rollups);
+        }
+        
+        return logManager;
+    }
+    
+    // Returns false if any entry had to be dropped
+    private boolean loadTextLogs(DailyLogManager logManager, FoodDatabase foodDatabase) {
+        boolean complete = true;
+        
+        try {
+            TextBuffer text = TextBuffer.read(filename);
+            LogLineParser parser = new LogLineParser(foodDatabase);
+            
+            while (text.nextLine()) {
+                fileRecordCount++;
+                try {
+                    // A later line for the same date is a newer save of that log
+                    logManager.addLog(parser.parse(text));
+                } catch (RuntimeException e) {
+                    complete = false;
+                    System.err.println("Error parsing log entry: " + e.getMessage());
                 }
-                
-                String[] parts = line.split("\\|");
-                if (parts.length < 2) {
-                    continue;
+            }
+            complete &= parser.isComplete();
+            // Lines appended after a damaged or cut-short one could be lost
+            // with it, so the next save rewrites the whole file instead
+            fileInSync = complete && text.endsWithLineBreak();
+        } catch (FileNotFoundException e) {
+            // No logs yet, that's fine
+        } catch (IOException e) {
+            complete = false;
+            System.err.println("Error reading logs: " + e.getMessage());
+        }
+        return complete;
+    }
+    
+    /**
+     * Parses log lines, "date|name:servings,...", resolving each food name
+     * against the database. Shared by the loader and the journal.
+     */
+    static final class LogLineParser {
+        private final FoodDatabase foodDatabase;
+        private final int[] fields = new int[4]; // Offsets of the date and entries fields
+        private final int[] detail = new int[6]; // Offsets of an entry's food name and servings
+        private boolean complete = true; // False once any entry is dropped
+        
+        LogLineParser(FoodDatabase foodDatabase) {
+            this.foodDatabase = foodDatabase;
+        }
+        
+        /**
+         * Parses the text's current line. Entries naming foods that are not
+         * in the database are skipped with a warning.
+         */
+        DailyLog parse(TextBuffer text) {
+            int parts = text.split(text.lineStart(), text.lineEnd(), '|', fields);
+            LocalDate date = text.parseDate(fields[0], fields[1]);
+            DailyLog log = new DailyLog(date);
+            
+            int end = fields[3];
+            for (int start = fields[2]; parts > 1 && start < end; start++) {
+                int entryEnd = text.find(',', start, end);
+                if (text.split(start, entryEnd, ':', detail) != 2) {
+                    complete = false;
+                } else {
+                    String foodName = text.string(detail[0], detail[1]);
+                    int servings = text.parseInt(detail[2], detail[3]);
+                    
+                    Food food = foodDatabase.getFood(foodName);
+                    if (food != null) {
+                        log.addEntry(new FoodEntry(food, servings));
+                    } else {
+                        complete = false;
+                        System.err.println("Skipping log entry for unknown food '" + foodName + "' on " + date);
+                    }
                 }
+                start = entryEnd;
+            }
+            return log;
+        }
+        
+        boolean isComplete() {
+            return complete;
+        }
+    }
+    
+    // Returns false if any entry had to be dropped
+    private boolean loadBinaryLogs(DailyLogManager logManager, FoodDatabase foodDatabase) {
+        boolean complete = true;
+        
+        try (DataInputStream in = BinaryFormat.open(filename)) {
+            BinaryFormat.readHeader(in, BinaryFormat.LOGS_MAGIC);
+            String[] strings = BinaryFormat.readStringTable(in);
+            
+            // Resolve each distinct food name once rather than per entry
+            Food[] foods = new Food[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                foods[i] = foodDatabase.getFood(strings[i]);
+            }
+            
+            int count = BinaryFormat.readVarint(in);
+            long epochDay = 0;
+            for (int i = 0; i < count; i++) {
+                // Dates are stored as the day count since the previous log's date
+                epochDay += BinaryFormat.readSignedVarint(in);
+                if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+                    throw new IOException("Date out of range");
+                }
+                DailyLog log = new DailyLog(LocalDate.ofEpochDay(epochDay));
                 
-                try {
-                    LocalDate date = LocalDate.parse(parts[0]);
-                    DailyLog log = new DailyLog(date);
-                    
-                    // Parse entries if any
-                    if (parts.length > 1 && !parts[1].isEmpty()) {
-                        // We'll populate entries when we have access to the food database
-                        // This happens when the controller initializes
+                for (int e = BinaryFormat.readVarint(in); e > 0; e--) {
+                    int foodId = BinaryFormat.readVarint(in);
+                    int servings = BinaryFormat.readSignedVarint(in);
+                    if (foodId < 0 || foodId >= foods.length) {
+                        throw new IOException("Food id " + foodId + " out of range");
                     }
                     
-                    logManager.addLog(log);
-                } catch (Exception e) {
-                    System.err.println("Error parsing log entry: " + e.getMessage());
+                    if (foods[foodId] != null) {
+                        log.addEntry(new FoodEntry(foods[foodId], servings));
+                    } else {
+                        complete = false;
+                        System.err.println("Skipping log entry for unknown food '" + strings[foodId] + "' on " + log.getDate());
+                    }
                 }
+                logManager.addLog(log);
             }
+            
+            fileRecordCount = count;
+            fileInSync = true;
         } catch (FileNotFoundException e) {
             // No logs yet, that's fine
         } catch (IOException e) {
+            complete = false;
             System.err.println("Error reading logs: " + e.getMessage());
         }
-        
-        return logManager;
+        return complete;
+    }
+    
+    // Returns false if the file could not be written
+    private boolean saveBinaryLogs(List<DailyLog> logs) {
+        try {
+            // Records go first into memory, as they decide what the string
+            // table written ahead of them has to hold
+            BinaryFormat.StringTableWriter strings = new BinaryFormat.StringTableWriter();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(records);
+            BinaryFormat.writeVarint(out, logs.size());
+            
+            long previousDay = 0;
+            for (DailyLog log : logs) {
+                long epochDay = log.getDate().toEpochDay();
+                BinaryFormat.writeSignedVarint(out, Math.toIntExact(epochDay - previousDay));
+                previousDay = epochDay;
+                
+                List<FoodEntry> entries = log.getEntries();
+                BinaryFormat.writeVarint(out, entries.size());
+                for (FoodEntry entry : entries) {
+                    BinaryFormat.writeVarint(out, strings.idOf(entry.getFood().getName()));
+                    BinaryFormat.writeSignedVarint(out, entry.getServings());
+                }
+            }
+            
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+                BinaryFormat.writeHeader(file, BinaryFormat.LOGS_MAGIC);
+                strings.writeTo(file);
+                records.writeTo(file);
+            }
+            fileRecordCount = logs.size();
+            fileInSync = true;
+            return true;
+        } catch (IOException | ArithmeticException e) {
+            fileInSync = false;
+            System.err.println("Error saving logs: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // The rollups file sits next to the log file, always as text:
+    // logs.txt or logs.bin -> logs.rollups.txt
+    private String getRollupsFilename() {
+        int dot = filename.lastIndexOf('.');
+        String base = dot <= filename.lastIndexOf(File.separatorChar) ? filename : filename.substring(0, dot);
+        return base + ".rollups.txt";
+    }
+    
+    // Identifies the daily totals the rollups were computed from. The totals
+    // depend on the food catalog as well as the log file, so the stamp covers
+    // both files; null if the foods file is unknown.
+    private String getStamp() {
+        if (foodsFilename == null) {
+            return null;
+        }
+        File logs = new File(filename);
+        File foods = new File(foodsFilename);
+        return logs.length() + ":" + logs.lastModified() + "|" + foods.length() + ":" + foods.lastModified();
     }
     
-    public void populateLogEntries(DailyLogManager logManager, FoodDatabase foodDatabase) {
-        this.foodDatabase = foodDatabase;
+    /**
+     * Reads the saved rollups, or returns null if there are none or the log
+     * or foods file has changed since they were saved
+     */
+    private CalorieRollups loadRollups() {
+        rollupsStamp = null;
+        String expected = getStamp();
+        if (expected == null) {
+            return null;
+        }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(getRollupsFilename()))) {
+            String stamp = reader.readLine();
+            if (!expected.equals(stamp)) {
+                return null;
+            }
+            
+            CalorieRollups rollups = new CalorieRollups();
             String line;
             while ((line = reader.readLine()) != null) {
                 if (line.trim().isEmpty()) {
@@ -73,49 +304,95 @@ public class LogPersistence {
                 }
                 
                 String[] parts = line.split("\\|");
-                if (parts.length < 2) {
-                    continue;
-                }
-                
-                try {
-                    LocalDate date = LocalDate.parse(parts[0]);
-                    DailyLog log = logManager.getOrCreateLog(date);
-                    
-                    // Parse entries if any
-                    if (parts.length > 1 && !parts[1].isEmpty()) {
-                        String[] entries = parts[1].split(",");
-                        for (String entry : entries) {
-                            String[] entryParts = entry.split(":");
-                            if (entryParts.length == 2) {
-                                String foodName = entryParts[0];
-                                int servings = Integer.parseInt(entryParts[1]);
-                                
-                                Food food = foodDatabase.getFood(foodName);
-                                if (food != null) {
-                                    log.addEntry(new FoodEntry(food, servings));
-                                }
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error parsing log entry: " + e.getMessage());
+                if (parts.length != 3) {
+                    return null;
                 }
+                rollups.put(CalorieRollups.Period.valueOf(parts[0]), LocalDate.parse(parts[1]), Long.parseLong(parts[2]));
             }
+            rollupsStamp = stamp;
+            return rollups;
         } catch (FileNotFoundException e) {
-            // No logs yet, that's fine
+            // Not saved yet; they will be rebuilt from the logs when needed
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error reading calorie rollups: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private void saveRollups(DailyLogManager logManager) {
+        String stamp = getStamp();
+        if (stamp == null) {
+            return;
+        }
+        CalorieRollups rollups = logManager.getRollups();
+        
+        rollupsStamp = null;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(getRollupsFilename()))) {
+            writer.write(stamp);
+            writer.newLine();
+            for (CalorieRollups.Period period : CalorieRollups.Period.values()) {
+                for (Map.Entry<LocalDate, Long> total : rollups.getTotals(period).entrySet()) {
+                    writer.write(period.name() + "|" + total.getKey() + "|" + total.getValue());
+                    writer.newLine();
+                }
+            }
+            rollupsStamp = stamp;
         } catch (IOException e) {
-            System.err.println("Error reading logs: " + e.getMessage());
+            System.err.println("Error saving calorie rollups: " + e.getMessage());
         }
     }
     
+    /**
+     * Saves the logs changed since the last save by appending their lines,
+     * or rewrites the whole file when that is due. Save the foods file first,
+     * as the calorie rollups saved along with the logs are stamped with it.
+     */
     public void saveLogs(DailyLogManager logManager) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            for (DailyLog log : logManager.getAllLogs()) {
-                writer.write(log.toFileString());
-                writer.newLine();
+        Set<LocalDate> dirtyDates = logManager.takeDirtyDates();
+        List<DailyLog> logs = logManager.getAllLogs();
+        if (fileInSync && dirtyDates.isEmpty()) {
+            // The log file is unchanged, but a save of the foods file since
+            // the rollups were saved leaves them stale
+            String stamp = getStamp();
+            if (stamp != null && !stamp.equals(rollupsStamp)) {
+                saveRollups(logManager);
+            }
+            return;
+        }
+        if (binary) {
+            if (saveBinaryLogs(logs)) {
+                saveRollups(logManager);
             }
+            return;
+        }
+        boolean rewrite = !fileInSync || fileRecordCount + dirtyDates.size() > 2 * logs.size();
+        
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename, StandardCharsets.UTF_8, !rewrite))) {
+            if (rewrite) {
+                for (DailyLog log : logs) {
+                    writer.write(log.toFileString());
+                    writer.newLine();
+                }
+                fileRecordCount = logs.size();
+            } else {
+                for (LocalDate date : dirtyDates) {
+                    DailyLog log = logManager.getLog(date);
+                    if (log != null) {
+                        writer.write(log.toFileString());
+                        writer.newLine();
+                        fileRecordCount++;
+                    }
+                }
+            }
+            fileInSync = true;
         } catch (IOException e) {
+            // The file may now hold part of a save; rewrite it all next time
+            fileInSync = false;
             System.err.println("Error saving logs: " + e.getMessage());
+            return;
         }
+        
+        saveRollups(logManager);
     }
 }
@@ -0,0 +1,255 @@
+// File: persistence/TextBuffer.java
+package yada.persistence;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory copy of a text file for the loaders, walked one line at a time.
+ * The file is read whole into a heap buffer rather than mapped, so nothing
+ * holds it open when a save rewrites it. Text is UTF-8, as the savers write
+ * it; delimiters are matched as single bytes, which UTF-8 allows. Fields are
+ * located as byte offsets within the current line and numbers and dates are
+ * parsed straight from the bytes, so the only objects made per field are the
+ * Strings asked for with string().
+ */
+final class TextBuffer {
+    private ByteBuffer bytes;
+    private int lineStart; // Offset of the current line
+    private int lineEnd; // Offset just past the current line's text, before any line break
+    private int next; // Offset of the line after the current one
+    private byte[] scratch = new byte[64]; // Copy area for decoding strings
+    
+    private TextBuffer(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+    
+    /**
+     * Reads the whole file; throws FileNotFoundException if it does not exist
+     */
+    static TextBuffer read(String filename) throws IOException {
+        try {
+            return new TextBuffer(ByteBuffer.wrap(Files.readAllBytes(Paths.get(filename))));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(filename);
+        }
+    }
+    
+    /**
+     * Wraps text already in memory, such as a journal record, so it can be
+     * read with the same parsers as the files
+     */
+    static TextBuffer of(String text) {
+        return new TextBuffer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Moves to the next line that is not blank, returning false at the end of
+     * the file. Accepts "\n", "\r\n" and "\r" line breaks.
+     */
+    boolean nextLine() {
+        int limit = bytes.limit();
+        while (next < limit) {
+            lineStart = next;
+            int i = lineStart;
+            boolean blank = true;
+            while (i < limit) {
+                byte b = bytes.get(i);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                // Matches String.trim(), which treats every char up to ' ' as blank
+                if ((b & 0xFF) > ' ') {
+                    blank = false;
+                }
+                i++;
+            }
+            lineEnd = i;
+            if (i < limit && bytes.get(i) == '\r') {
+                i++;
+            }
+            if (i < limit && bytes.get(i) == '\n') {
+                i++;
+            }
+            next = i;
+            if (!blank) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns true if the text is empty or ends in a line break, false if
+     * its last line was cut short
+     */
+    boolean endsWithLineBreak() {
+        int limit = bytes.limit();
+        return limit == 0 || bytes.get(limit - 1) == '\n' || bytes.get(limit - 1) == '\r';
+    }
+    
+    int lineStart() {
+        return lineStart;
+    }
+    
+    int lineEnd() {
+        return lineEnd;
+    }
+    
+    /**
+     * Returns the offset of the first occurrence of the byte in [from, to),
+     * or to if there is none
+     */
+    int find(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes.get(i) == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+    
+    /**
+     * Splits [from, to) on the delimiter the way String.split does, storing
+     * start/end offset pairs in bounds. Returns the number of fields once
+     * trailing empty ones are dropped, at most bounds.length / 2; fields past
+     * that are not recorded.
+     */
+    int split(int from, int to, char delimiter, int[] bounds) {
+        int count = 0;
+        int nonEmpty = 0;
+        for (int start = from; ; start++) {
+            int end = find(delimiter, start, to);
+            if (2 * count < bounds.length) {
+                bounds[2 * count] = start;
+                bounds[2 * count + 1] = end;
+            }
+            count++;
+            if (end > start) {
+                nonEmpty = count;
+            }
+            if (end == to) {
+                break;
+            }
+            start = end;
+        }
+        return Math.min(nonEmpty, bounds.length / 2);
+    }
+    
+    /**
+     * Returns the fields of [from, to) split on the delimiter, dropping
+     * trailing empty ones as String.split does
+     */
+    List<String> strings(int from, int to, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        if (from == to) {
+            fields.add("");
+            return fields;
+        }
+        
+        int kept = 0;
+        for (int start = from; ; start++) {
+            int end = find(delimiter, start, to);
+            fields.add(string(start, end));
+            if (end > start) {
+                kept = fields.size();
+            }
+            if (end == to) {
+                break;
+            }
+            start = end;
+        }
+        return fields.subList(0, kept);
+    }
+    
+    String string(int from, int to) {
+        int length = to - from;
+        if (length > scratch.length) {
+            scratch = new byte[Math.max(length, 2 * scratch.length)];
+        }
+        bytes.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    char charAt(int offset) {
+        return (char) (bytes.get(offset) & 0xFF);
+    }
+    
+    String line() {
+        return string(lineStart, lineEnd);
+    }
+    
+    /**
+     * Parses a decimal int with an optional sign, as Integer.parseInt does
+     */
+    int parseInt(int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw badNumber(from, to);
+        }
+        
+        long limit = negative ? 1L + Integer.MAX_VALUE : Integer.MAX_VALUE;
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw badNumber(from, to);
+            }
+            value = value * 10 + digit;
+            if (value > limit) {
+                throw badNumber(from, to);
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+    
+    private NumberFormatException badNumber(int from, int to) {
+        return new NumberFormatException("For input string: \"" + string(from, to) + "\"");
+    }
+    
+    /**
+     * Parses an ISO date. The common yyyy-MM-dd form is read directly from
+     * the bytes; anything else, valid or not, goes through LocalDate.parse so
+     * errors read the same as before.
+     */
+    LocalDate parseDate(int from, int to) {
+        if (to - from == 10 && bytes.get(from + 4) == '-' && bytes.get(from + 7) == '-') {
+            int year = digits(from, from + 4);
+            int month = digits(from + 5, from + 7);
+            int day = digits(from + 8, from + 10);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1
+                    && day <= Month.of(month).length(Year.isLeap(year))) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(string(from, to));
+    }
+    
+    // Returns the unsigned number in [from, to), or -1 if it has a non-digit
+    private int digits(int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -1,4 +1,3 @@
-
 // File: util/Command.java
 package yada.util;
 
@@ -8,4 +7,20 @@ package yada.util;
 public interface Command {
     void execute();
     void undo();
+    
+    /**
+     * Returns the journal record for the change made by execute, or null if
+     * the command is not journaled. Called right after execute.
+     */
+    default String getExecuteRecord() {
+        return null;
+    }
+    
+    /**
+     * Returns the journal record for the change made by undo, or null if the
+     * command is not journaled. Called right after undo.
+     */
+    default String getUndoRecord() {
+        return null;
+    }
 }
@@ -9,20 +9,33 @@ import java.util.Stack;
  */
 public class CommandHistory {
     private Stack<Command> history;
+    private CommandJournal journal; // Receives a record of every change, if set
     
     public CommandHistory() {
         history = new Stack<>();
     }
     
+    public void setJournal(CommandJournal journal) {
+        this.journal = journal;
+    }
+    
     public void executeCommand(Command command) {
         command.execute();
         history.push(command);
+        record(command.getExecuteRecord());
     }
     
     public void undo() {
         if (!history.isEmpty()) {
             Command command = history.pop();
             command.undo();
+            record(command.getUndoRecord());
+        }
+    }
+    
+    private void record(String record) {
+        if (journal != null && record != null) {
+            journal.append(record);
         }
     }
     
@@ -0,0 +1,9 @@
+// File: util/CommandJournal.java
+package yada.util;
+
+/**
+ * Destination for the records of executed and undone commands
+ */
+public interface CommandJournal {
+    void append(String record);
+}
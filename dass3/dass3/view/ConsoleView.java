@@ -29,6 +29,7 @@ public class ConsoleView {
         System.out.println("3. Manage Profile");
         System.out.println("4. Show Daily Summary");
         System.out.println("5. Undo Last Action");
+        System.out.println("6. Show Calorie Trends");
         System.out.println("0. Save and Exit");
         System.out.print("Enter choice: ");
     }
@@ -39,6 +40,8 @@ public class ConsoleView {
         System.out.println("2. Create Composite Food");
         System.out.println("3. Search Foods");
         System.out.println("4. Save Food Database");
+        System.out.println("5. Advanced Search (AND/OR/NOT)");
+        System.out.println("6. Find Foods by Calorie Range");
         System.out.println("0. Back to Main Menu");
         System.out.print("Enter choice: ");
     }